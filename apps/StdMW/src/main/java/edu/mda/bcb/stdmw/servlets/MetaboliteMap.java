@@ -17,11 +17,13 @@ import edu.mda.bcb.stdmwutils.mwdata.Analysis;
 import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
 import edu.mda.bcb.stdmwutils.utils.AnalysisUtil;
 import edu.mda.bcb.stdmwutils.utils.RefMetUtil;
+import edu.mda.bcb.stdmwutils.utils.MetaboliteMapSnapshot;
 import edu.mda.bcb.stdmwutils.utils.MetaboliteMapUtil;
 import edu.mda.bcb.stdmwutils.utils.MetaboliteUtil;
 import edu.mda.bcb.stdmwutils.utils.OtherIdsUtil;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -70,10 +72,24 @@ public class MetaboliteMap extends HttpServlet
 			{
 				response.setContentType("text/tab-separated-values;charset=UTF-8");
 				response.setHeader("Content-Disposition", "attachment; filename=\"map_" + analysis.analysis_id + ".tsv\"");
+				// use the map built at cache load, if there is one for this analysis
+				MetaboliteMapSnapshot snapshot = Scheduled.getMetaboliteMap();
+				long length = (null==snapshot) ? -1 : snapshot.getLength(analysis.analysis_id);
+				if (length>=0)
+				{
+					response.setContentLengthLong(length);
+				}
 				try (OutputStream out = response.getOutputStream())
 				{
-					MetaboliteMapUtil mmu = new MetaboliteMapUtil(metaUtil, refmetUtil, otherIdsUtil);
-					mmu.streamTsv(out, analysis.analysis_id);
+					if (length>=0)
+					{
+						snapshot.transferTo(analysis.analysis_id, Channels.newChannel(out));
+					}
+					else
+					{
+						MetaboliteMapUtil mmu = MetaboliteMapUtil.getInstance(metaUtil, refmetUtil, otherIdsUtil);
+						mmu.streamTsv(out, analysis.analysis_id);
+					}
 				}
 				catch (Exception e)
 				{
@@ -17,6 +17,10 @@ import edu.mda.bcb.stdmw.utils.FIFOQueue;
 import edu.mda.bcb.stdmwutils.StdMwException;
 import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
 import edu.mda.bcb.stdmwutils.utils.AnalysisUtil;
+import edu.mda.bcb.stdmwutils.utils.DatatableCache;
+import edu.mda.bcb.stdmwutils.utils.FactorUtil;
+import edu.mda.bcb.stdmwutils.utils.MetaboliteMapSnapshot;
+import edu.mda.bcb.stdmwutils.utils.MetaboliteMapUtil;
 import edu.mda.bcb.stdmwutils.utils.MetaboliteUtil;
 import edu.mda.bcb.stdmwutils.utils.SummaryUtil;
 import edu.mda.bcb.stdmwutils.utils.RefMetUtil;
@@ -58,11 +62,13 @@ public class Scheduled implements Runnable
 			{
 				mSC.log("Scheduled::Run clean old data " + MWUrls.M_VERSION);
 				File [] del = dataDir.listFiles();
+				MetaboliteMapSnapshot snapshot = getMetaboliteMap();
 				for (File rm : del)
 				{
 					long lastMod = rm.lastModified();
 					// if over an hour old (60 min * 60 sec * 1000 ms)
-					if ((System.currentTimeMillis() - lastMod) > (60*60*1000))
+					// keep the metabolite map snapshot still in use
+					if (((System.currentTimeMillis() - lastMod) > (60*60*1000))&&((null==snapshot)||(!rm.equals(snapshot.getFile()))))
 					{
 						FileUtils.deleteQuietly(rm);
 					}
@@ -127,14 +133,55 @@ public class Scheduled implements Runnable
 	static private MetaboliteUtil mMetaUtil = null;
 	static private RefMetUtil mRefmetUtil = null;
 	static private OtherIdsUtil mOtherIdsUtil = null;
+	static private MetaboliteMapSnapshot mMetaboliteMap = null;
 	
-	static synchronized public void updateUtilObjects(ServletContext theSC) throws IOException, MalformedURLException, NoSuchAlgorithmException, StdMwException
+	static public void updateUtilObjects(ServletContext theSC) throws IOException, MalformedURLException, NoSuchAlgorithmException, StdMwException
 	{
-		mSummary = SummaryUtil.readNewestSummaryFile();
-		mAnalysis = AnalysisUtil.readNewestAnalysisFile();
-		mMetaUtil = MetaboliteUtil.readNewestMetaboliteFile();
-		mRefmetUtil = RefMetUtil.readNewestRefMetFile();
-		mOtherIdsUtil = OtherIdsUtil.readNewestOtherIdsFile();
+		// read outside the lock, so servlets keep using the current objects meanwhile
+		SummaryUtil summary = SummaryUtil.readNewestSummaryFile();
+		AnalysisUtil analysis = AnalysisUtil.readNewestAnalysisFile();
+		MetaboliteUtil metaUtil = MetaboliteUtil.readNewestMetaboliteFile();
+		RefMetUtil refmetUtil = RefMetUtil.readNewestRefMetFile();
+		OtherIdsUtil otherIdsUtil = OtherIdsUtil.readNewestOtherIdsFile();
+		MetaboliteMapUtil mmu = MetaboliteMapUtil.getInstance(metaUtil, refmetUtil, otherIdsUtil);
+		synchronized(Scheduled.class)
+		{
+			mSummary = summary;
+			mAnalysis = analysis;
+			mMetaUtil = metaUtil;
+			mRefmetUtil = refmetUtil;
+			mOtherIdsUtil = otherIdsUtil;
+			// drop the snapshot for the old data, requests stream from the new utils until it is rebuilt
+			mMetaboliteMap = null;
+		}
+		// datatables and factors may have changed with the new data
+		DatatableCache.printStats();
+		DatatableCache.clear();
+		FactorUtil.clearCache();
+		// metabolite maps for all analyses, so requests do not rebuild the join
+		if (MetaboliteMapSnapshot.M_ENABLED)
+		{
+			try
+			{
+				MetaboliteMapSnapshot snapshot = MetaboliteMapSnapshot.build(new File(MWUrls.M_MWB_TEMP), mmu);
+				synchronized(Scheduled.class)
+				{
+					// only publish if no newer load replaced the utils while building
+					if (mMetaUtil==metaUtil)
+					{
+						mMetaboliteMap = snapshot;
+					}
+					else
+					{
+						snapshot.getFile().delete();
+					}
+				}
+			}
+			catch (Exception exp)
+			{
+				theSC.log("Scheduled::updateUtilObjects unable to build metabolite map snapshot", exp);
+			}
+		}
 	}
 	
 	static synchronized public SummaryUtil getSummary()
@@ -161,4 +208,9 @@ public class Scheduled implements Runnable
 	{
 		return mOtherIdsUtil;
 	}
+	
+	static synchronized public MetaboliteMapSnapshot getMetaboliteMap()
+	{
+		return mMetaboliteMap;
+	}
 }
@@ -30,7 +30,7 @@ public class DataMap<T>
 
 	private TreeMap<String, T> mDataMap = null;
 
-	public void put(String theHash, T theData) throws StdMwException
+	synchronized public void put(String theHash, T theData) throws StdMwException
 	{
 		T old = mDataMap.put(theHash, theData);
 		if (null != old)
@@ -41,19 +41,19 @@ public class DataMap<T>
 		}
 	}
 
-	public TreeSet<T> getAll()
+	synchronized public TreeSet<T> getAll()
 	{
 		TreeSet<T> set = new TreeSet<>();
 		set.addAll(mDataMap.values());
 		return set;
 	}
 
-	public T get(String theHash)
+	synchronized public T get(String theHash)
 	{
 		return mDataMap.get(theHash);
 	}
 	
-	public int size()
+	synchronized public int size()
 	{
 		return mDataMap.size();
 	}
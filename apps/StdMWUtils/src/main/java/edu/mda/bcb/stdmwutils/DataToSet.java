@@ -30,7 +30,7 @@ public class DataToSet<T>
 
 	private TreeMap<String, TreeSet<T>> mDataToSet = null;
 
-	public void put(String theHash, T theData) throws StdMwException
+	synchronized public void put(String theHash, T theData) throws StdMwException
 	{
 		TreeSet<T> set = mDataToSet.get(theHash);
 		if (null==set)
@@ -47,7 +47,7 @@ public class DataToSet<T>
 		}
 	}
 
-	public TreeSet<T> getAll()
+	synchronized public TreeSet<T> getAll()
 	{
 		TreeSet<T> set = new TreeSet<>();
 		for (TreeSet<T> subSet : mDataToSet.values())
@@ -57,12 +57,17 @@ public class DataToSet<T>
 		return set;
 	}
 
-	public TreeSet<T> get(String theHash)
+	synchronized public TreeSet<T> get(String theHash)
 	{
 		return mDataToSet.get(theHash);
 	}
 	
-	public int size()
+	synchronized public TreeSet<String> getKeys()
+	{
+		return new TreeSet<>(mDataToSet.keySet());
+	}
+	
+	synchronized public int size()
 	{
 		return mDataToSet.size();
 	}
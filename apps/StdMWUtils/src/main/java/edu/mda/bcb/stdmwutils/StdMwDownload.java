@@ -19,6 +19,8 @@ import edu.mda.bcb.stdmwutils.utils.AnalysisUtil;
 import edu.mda.bcb.stdmwutils.utils.SummaryUtil;
 import edu.mda.bcb.stdmwutils.utils.MetaboliteUtil;
 import edu.mda.bcb.stdmwutils.utils.RefMetUtil;
+import edu.mda.bcb.stdmwutils.utils.RequestGovernor;
+import edu.mda.bcb.stdmwutils.utils.ResponseCache;
 import edu.mda.bcb.stdmwutils.utils.OtherIdsUtil;
 import edu.mda.bcb.stdmwutils.validate.ValidateUtil;
 import java.io.File;
@@ -79,7 +81,10 @@ public class StdMwDownload
 		RefMetUtil ru = RefMetUtil.updateRefMetUtil(theDataVersion, true);
 		OtherIdsUtil ou = OtherIdsUtil.updateOtherIdsUtil(theDataVersion, ru, mu, true);
 		ValidateUtil vu = new ValidateUtil(mu, ru, ou);
+		// integrity counts cover every analysis; ValidateUtil.M_ALL_ANALYSES maps all of them, not just the random ids
 		vu.validate(theDataVersion, au.getRandomIds());
+		ResponseCache.printStats();
+		RequestGovernor.printStats();
 	}
 
 	static private void testCacheRead(boolean theAllFlag) throws IOException, MalformedURLException, NoSuchAlgorithmException, StdMwException
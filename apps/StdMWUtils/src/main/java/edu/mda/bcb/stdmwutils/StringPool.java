@@ -0,0 +1,44 @@
+/*
+ *  Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+ *  
+ *  This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+ *  MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+ */
+package edu.mda.bcb.stdmwutils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Returns one shared instance for equal strings, so values repeated
+ * across many records (study and analysis ids, summaries, id types,
+ * RefMet names) are held once. Used while loading, then dropped, since
+ * the records keep the shared instances.
+ *
+ * @author TDCasasent
+ */
+public class StringPool
+{
+	private final ConcurrentHashMap<String, String> mPool = new ConcurrentHashMap<>();
+
+	public String get(String theString)
+	{
+		if (null==theString)
+		{
+			return null;
+		}
+		String old = mPool.putIfAbsent(theString, theString);
+		return (null==old) ? theString : old;
+	}
+
+	public int size()
+	{
+		return mPool.size();
+	}
+}
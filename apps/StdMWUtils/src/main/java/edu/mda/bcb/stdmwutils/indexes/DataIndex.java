@@ -18,8 +18,10 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.OpenOption;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.TreeSet;
 
 /**
@@ -44,6 +46,11 @@ public class DataIndex
 	 */
 	private TreeSet<DataArchive> mData = null;
 	
+	/**
+	 * True once the index file has been read into mData for batch updates.
+	 */
+	private boolean mLoaded = false;
+	
 	/**
 	 * Constructor which takes a path to the file.
 	 * 
@@ -96,7 +103,90 @@ public class DataIndex
 	}
 	
 	/**
-	 * Write the index file
+	 * Build a row for an index, listing the files stored in the ZIP.
+	 * Does not modify any index, so may be called in parallel.
+	 * 
+	 * @param theZip Path to ZIP for this row
+	 * @param theID Unique String ID for this row
+	 * @param theJD JsonDataset object for this row
+	 * @return DataArchive object for this row
+	 * @throws IOException 
+	 */
+	static public DataArchive buildArchive(File theZip, String theID, JsonDataset theJD) throws IOException
+	{
+		TreeSet<String> myFiles = ZipData.getListOfFiles(theZip);
+		return new DataArchive(theZip.getAbsolutePath(), theID, myFiles, theJD);
+	}
+	
+	/**
+	 * Get the ZIP paths currently in the index. Reads the index file
+	 * only once, for use with updateIndexBatch.
+	 * 
+	 * @return TreeSet of absolute ZIP paths in the index
+	 * @throws IOException
+	 * @throws Exception 
+	 */
+	synchronized public TreeSet<String> getIndexedPaths() throws IOException, Exception
+	{
+		loadIndex();
+		TreeSet<String> paths = new TreeSet<>();
+		for (DataArchive myRow : mData)
+		{
+			paths.add(myRow.mPath);
+		}
+		return paths;
+	}
+	
+	/**
+	 * Add rows to an index -- reads the index file at most once, adds all 
+	 * rows, and replaces the file on disk once.
+	 * 
+	 * @param theRows DataArchive objects to add (see buildArchive)
+	 * @return number of rows added
+	 * @throws IOException
+	 * @throws Exception 
+	 */
+	synchronized public int updateIndexBatch(Collection<DataArchive> theRows) throws IOException, Exception
+	{
+		loadIndex();
+		int added = 0;
+		for (DataArchive myRow : theRows)
+		{
+			if (mData.add(myRow))
+			{
+				added += 1;
+			}
+		}
+		if (added > 0)
+		{
+			writeDataFrame(mIndexFile);
+		}
+		return added;
+	}
+	
+	/**
+	 * Read the index file into mData, if not already read.
+	 * 
+	 * @throws IOException
+	 * @throws Exception 
+	 */
+	private void loadIndex() throws IOException, Exception
+	{
+		if (false==mLoaded)
+		{
+			mData = new TreeSet<>();
+			if (mIndexFile.exists())
+			{
+				readDataFrame(mIndexFile);
+			}
+			mLoaded = true;
+		}
+	}
+	
+	/**
+	 * Write the index file. Writes to a temporary file in the same
+	 * directory and then moves it over theFile, so readers never see a
+	 * partially written index.
 	 * 
 	 * @param theFile file to which to write this index
 	 * @throws IOException 
@@ -104,7 +194,8 @@ public class DataIndex
 	private void writeDataFrame(File theFile) throws IOException
 	{
 		OpenOption[] options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
-		try (BufferedWriter bw = java.nio.file.Files.newBufferedWriter(theFile.toPath(), Charset.availableCharsets().get("UTF-8"), options))
+		File tmpFile = new File(theFile.getAbsoluteFile().getParentFile(), theFile.getName() + ".tmp");
+		try (BufferedWriter bw = java.nio.file.Files.newBufferedWriter(tmpFile.toPath(), Charset.availableCharsets().get("UTF-8"), options))
 		{
 			boolean addTab = false;
 			// write header
@@ -128,6 +219,14 @@ public class DataIndex
 				bw.newLine();
 			}
 		}
+		try
+		{
+			java.nio.file.Files.move(tmpFile.toPath(), theFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (java.nio.file.AtomicMoveNotSupportedException exp)
+		{
+			java.nio.file.Files.move(tmpFile.toPath(), theFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
 	}
 	
 	/**
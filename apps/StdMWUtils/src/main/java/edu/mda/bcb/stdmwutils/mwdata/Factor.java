@@ -52,28 +52,88 @@ public class Factor implements Comparable<Factor>
 		//
 	}
 	
-	public void init() throws NoSuchAlgorithmException
+	// MessageDigest is not thread safe, and getInstance is slow to call per sample
+	static private final ThreadLocal<MessageDigest> M_SHA1 = ThreadLocal.withInitial(() ->
 	{
-		MessageDigest shaDigest = MessageDigest.getInstance("SHA-1");
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException exp)
+		{
+			throw new IllegalStateException(exp);
+		}
+	});
+
+	public void init()
+	{
+		MessageDigest shaDigest = M_SHA1.get();
+		shaDigest.reset();
 		shaDigest.update(local_sample_id.getBytes());
 		hash = Hex.encodeHexString(shaDigest.digest());
 		//
 		factorMap = new HashMap<>();
 		//StdMwDownload.printLn("Factor init - factors=" + factors);
-		String [] splitted = factors.split(" \\| ", -1);
-		for (String pair : splitted)
+		parseFactors(factors, factorMap);
+	}
+
+	/**
+	 * Single pass over theFactors, same result as splitting on " | ",
+	 * trimming each pair, and keeping pairs with exactly one ':' as
+	 * trimmed name and value.
+	 */
+	static void parseFactors(String theFactors, HashMap<String, String> theMap)
+	{
+		int length = theFactors.length();
+		int start = 0;
+		int colon = -1;
+		int colons = 0;
+		int index = 0;
+		while (index<=length)
 		{
-			pair = pair.trim();
-			//StdMwDownload.printLn("Factor init - pair=" + pair);
-			String [] nv = pair.split("\\:", -1);
-			if (2==nv.length)
+			boolean endPair = (index==length);
+			if ((!endPair)&&(index + 2<length)&&(' '==theFactors.charAt(index))&&('|'==theFactors.charAt(index + 1))&&(' '==theFactors.charAt(index + 2)))
+			{
+				endPair = true;
+			}
+			if (endPair)
+			{
+				if (1==colons)
+				{
+					theMap.put(trimmed(theFactors, start, colon), trimmed(theFactors, colon + 1, index));
+				}
+				// skip " | "
+				index += 3;
+				start = index;
+				colon = -1;
+				colons = 0;
+			}
+			else
 			{
-				String name = nv[0].trim();
-				String value = nv[1].trim();
-				factorMap.put(name, value);
+				if (':'==theFactors.charAt(index))
+				{
+					colon = index;
+					colons += 1;
+				}
+				index += 1;
 			}
 		}
 	}
+
+	static private String trimmed(String theString, int theStart, int theEnd)
+	{
+		int start = theStart;
+		int end = theEnd;
+		while ((start<end)&&(theString.charAt(start)<=' '))
+		{
+			start += 1;
+		}
+		while ((end>start)&&(theString.charAt(end - 1)<=' '))
+		{
+			end -= 1;
+		}
+		return theString.substring(start, end);
+	}
 	
 	@Override
 	public int compareTo(Factor t)
@@ -27,6 +27,7 @@ public class MWUrls
 	// not used in webiste StdMW
 	static public String M_MWB_CONVERTED = "/BEA/MWB/CONVERTED/";
 	static public String M_MWB_INDEXES = "/BEA/MWB/INDEXES/";
+	static public String M_MWB_HTTP_CACHE = "/BEA/MWB/HTTP_CACHE/";
 	// used in website StdMW
 	static public String M_MWB_CACHE = "/BEA/MWB/MW_CACHE/";
 	static public String M_MWB_TEMP = "/BEA/MWB/MW_TMP/";
@@ -36,8 +37,16 @@ public class MWUrls
 	static public String M_METABOLITES = "metabolites.tsv";
 	static public String M_REFMET = "refmet.tsv";
 	static public String M_OTHERIDS = "otherids.tsv";
+	// file in M_MWB_CACHE (not a timestamp directory) of PubChem ids with no OtherIds
+	static public String M_OTHERIDS_NEGATIVE = "otherids_negative.tsv";
 
-	static public String M_SUMMARY_LIST = "https://www.metabolomicsworkbench.org/rest/study/study_id/ST/summary";
+	// base for all REST calls, can point at a local ReplayServer for benchmarks
+	static public String M_REST_BASE = System.getProperty("stdmw.rest.base", "https://www.metabolomicsworkbench.org/rest/");
+
+	static public String getSummaryList()
+	{
+		return M_REST_BASE + "study/study_id/ST/summary";
+	}
 	//This no longer returns JSON
 	//static public String M_REFMET_LIST = "https://www.metabolomicsworkbench.org/rest/refmet/all/json";
 
@@ -46,37 +55,37 @@ public class MWUrls
 	
 	static public String getRefMet(String theRefMetName)
 	{
-		return "https://www.metabolomicsworkbench.org/rest/refmet/name/" + theRefMetName + "/all";
+		return M_REST_BASE + "refmet/name/" + theRefMetName + "/all";
 	}
 	
 	static public String getAnalyses(String theStudyId)
 	{
-		return "https://www.metabolomicsworkbench.org/rest/study/study_id/" + theStudyId + "/analysis";
+		return M_REST_BASE + "study/study_id/" + theStudyId + "/analysis";
 	}
 
 	static public String getDatatable(String theAnalysisId)
 	{
-		return "https://www.metabolomicsworkbench.org/rest/study/analysis_id/" + theAnalysisId + "/datatable/txt";
+		return M_REST_BASE + "study/analysis_id/" + theAnalysisId + "/datatable/txt";
 	}
 
 	//static public String getFactors(String theStudyId)
 	//{
-	//	return "https://www.metabolomicsworkbench.org/rest/study/study_id/" + theStudyId + "/factors";
+	//	return M_REST_BASE + "study/study_id/" + theStudyId + "/factors";
 	//}
 
 	static public String getAllFactors(String theStudyId)
 	{
-		return "https://www.metabolomicsworkbench.org/rest/study/study_id/" + theStudyId + "/allfactors";
+		return M_REST_BASE + "study/study_id/" + theStudyId + "/allfactors";
 	}
 
 	static public String getMetabolites(String theAnalysisId)
 	{
-		return "https://www.metabolomicsworkbench.org/rest/study/analysis_id/" + theAnalysisId + "/metabolites";
+		return M_REST_BASE + "study/analysis_id/" + theAnalysisId + "/metabolites";
 	}
 
 	static public String getOtherIDs(String pubchemId)
 	{
-		return "https://www.metabolomicsworkbench.org/rest/compound/pubchem_cid/" + pubchemId + "/all";
+		return M_REST_BASE + "compound/pubchem_cid/" + pubchemId + "/all";
 	}
 
 	static public File findNewestDir(File theDir)
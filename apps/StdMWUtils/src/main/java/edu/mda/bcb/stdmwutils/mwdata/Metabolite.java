@@ -11,6 +11,7 @@
 
 package edu.mda.bcb.stdmwutils.mwdata;
 
+import edu.mda.bcb.stdmwutils.StringPool;
 import java.util.ArrayList;
 
 /**
@@ -39,6 +40,21 @@ public class Metabolite implements Comparable<Metabolite>
 		refmet_name = refmet_name.trim();
 	}
 	
+	/**
+	 * Replace each field with the shared copy from thePool.
+	 */
+	public void compact(StringPool thePool)
+	{
+		study_id = thePool.get(study_id);
+		analysis_id = thePool.get(analysis_id);
+		analysis_summary = thePool.get(analysis_summary);
+		metabolite_name = thePool.get(metabolite_name);
+		refmet_name = thePool.get(refmet_name);
+		pubchem_id = thePool.get(pubchem_id);
+		other_id = thePool.get(other_id);
+		other_id_type = thePool.get(other_id_type);
+	}
+	
 	static public String getHeaderString()
 	{
 		return "study_id\tanalysis_id\tanalysis_summary\tmetabolite_name\trefmet_name\tpubchem_id\tother_id\tother_id_type";
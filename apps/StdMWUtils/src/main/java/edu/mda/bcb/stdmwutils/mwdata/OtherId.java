@@ -12,6 +12,7 @@
  */
 package edu.mda.bcb.stdmwutils.mwdata;
 
+import edu.mda.bcb.stdmwutils.StringPool;
 import java.util.ArrayList;
 
 /**
@@ -36,6 +37,23 @@ public class OtherId implements Comparable<OtherId>
 		//
 	}
 
+	/**
+	 * Replace each field with the shared copy from thePool.
+	 */
+	public void compact(StringPool thePool)
+	{
+		pubchem_cid = thePool.get(pubchem_cid);
+		regno = thePool.get(regno);
+		sys_name = thePool.get(sys_name);
+		lm_id = thePool.get(lm_id);
+		hmdb_id = thePool.get(hmdb_id);
+		kegg_id = thePool.get(kegg_id);
+		chebi_id = thePool.get(chebi_id);
+		metacyc_id = thePool.get(metacyc_id);
+		smiles = thePool.get(smiles);
+		name = thePool.get(name);
+	}
+
 	static public String getHeaderString()
 	{
 		return "pubchem_cid\tregno\tsys_name\tlm_id\thmdb_id\tkegg_id\tchebi_id\tmetacyc_id\tsmiles\tname";
@@ -0,0 +1,255 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+package edu.mda.bcb.stdmwutils.replay;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import edu.mda.bcb.stdmwutils.mwdata.Analysis;
+import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
+import edu.mda.bcb.stdmwutils.mwdata.Summary;
+import edu.mda.bcb.stdmwutils.std.ProcessEntry;
+import edu.mda.bcb.stdmwutils.std.ProcessUtil;
+import edu.mda.bcb.stdmwutils.utils.AnalysisUtil;
+import edu.mda.bcb.stdmwutils.utils.DatatableCache;
+import edu.mda.bcb.stdmwutils.utils.DatatableUtil;
+import edu.mda.bcb.stdmwutils.utils.DownloadConvertSingle;
+import edu.mda.bcb.stdmwutils.utils.FactorUtil;
+import edu.mda.bcb.stdmwutils.utils.MetaboliteUtil;
+import edu.mda.bcb.stdmwutils.utils.OtherIdsUtil;
+import edu.mda.bcb.stdmwutils.utils.ParallelFetch;
+import edu.mda.bcb.stdmwutils.utils.RefMetUtil;
+import edu.mda.bcb.stdmwutils.utils.RequestGovernor;
+import edu.mda.bcb.stdmwutils.utils.ResponseCache;
+import edu.mda.bcb.stdmwutils.utils.SummaryUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Times the pipeline against a ReplayServer. Run once in record mode to
+ * capture the REST responses for the first N studies, then in replay mode
+ * to compare changes without depending on the Metabolomics Workbench or
+ * the network.
+ *
+ * Arguments: record|replay captureDir workDir [latencyMs] [studyLimit]
+ *
+ * Phases, each timed separately:
+ * - the StdMwDownload cache refresh for those studies: summaries,
+ *   analyses, metabolites, RefMet, and OtherIds (the compound endpoint)
+ * - datatables (Raw, MSC, DC) and factors, as the servlets request them
+ * - ProcessUtil.processPending, download and convert for each analysis
+ * - DownloadConvertSingle.dAndC for each analysis, as ZipConversion does
+ *
+ * RefMet comes from a local CSV, not REST. Put refmet.csv in captureDir
+ * to use it; otherwise RefMet is empty and OtherIds are looked up for
+ * metabolite PubChem ids only. The link out conversion needs the
+ * metabolite_map.tsv deployed with MW_CACHE, so copy that into captureDir
+ * as well (data/testing_static/MW_CACHE has one).
+ *
+ * The on-disk response cache is turned off, and the MW_CACHE, MW_TMP,
+ * CONVERTED and INDEXES directories in workDir are emptied first, so each
+ * run does the same requests. Datatable and factor caches are cleared
+ * before each phase. In replay mode the RequestGovernor limits are also
+ * turned off, since nothing goes to the Workbench.
+ *
+ * @author Tod-Casasent
+ */
+public class ReplayBenchmark
+{
+	public static void main(String[] args)
+	{
+		if (args.length<3)
+		{
+			System.err.println("Usage: ReplayBenchmark record|replay captureDir workDir [latencyMs] [studyLimit]");
+			System.exit(1);
+		}
+		String mode = args[0];
+		File captureDir = new File(args[1]);
+		File workDir = new File(args[2]);
+		long latencyMs = 0;
+		if (args.length>3)
+		{
+			latencyMs = Long.parseLong(args[3]);
+		}
+		int studyLimit = 20;
+		if (args.length>4)
+		{
+			studyLimit = Integer.parseInt(args[4]);
+		}
+		ReplayServer server = new ReplayServer(captureDir, MWUrls.M_REST_BASE, mode, latencyMs);
+		try
+		{
+			server.start(ParallelFetch.M_PARALLELISM);
+			configure(server, captureDir, workDir, mode);
+			runBenchmark(studyLimit);
+		}
+		catch (Exception exp)
+		{
+			StdMwDownload.printErr("Error in ReplayBenchmark", exp);
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+
+	static private void configure(ReplayServer theServer, File theCaptureDir, File theWorkDir, String theMode) throws IOException
+	{
+		// keep all output out of /BEA
+		MWUrls.M_MWB_CACHE = new File(theWorkDir, "MW_CACHE").getAbsolutePath() + File.separator;
+		MWUrls.M_MWB_TEMP = new File(theWorkDir, "MW_TMP").getAbsolutePath() + File.separator;
+		MWUrls.M_MWB_CONVERTED = new File(theWorkDir, "CONVERTED").getAbsolutePath() + File.separator;
+		MWUrls.M_MWB_INDEXES = new File(theWorkDir, "INDEXES").getAbsolutePath() + File.separator;
+		MWUrls.M_MWB_HTTP_CACHE = new File(theWorkDir, "HTTP_CACHE").getAbsolutePath() + File.separator;
+		for (String dir : new String [] { MWUrls.M_MWB_CACHE, MWUrls.M_MWB_TEMP, MWUrls.M_MWB_CONVERTED, MWUrls.M_MWB_INDEXES })
+		{
+			FileUtils.deleteQuietly(new File(dir));
+			new File(dir).mkdirs();
+		}
+		File refmetCsv = new File(theCaptureDir, "refmet.csv");
+		if (refmetCsv.exists())
+		{
+			FileUtils.copyFile(refmetCsv, new File(MWUrls.M_MWB_CACHE, "refmet.csv"));
+		}
+		else
+		{
+			StdMwDownload.printWarn("ReplayBenchmark no refmet.csv in " + theCaptureDir.getAbsolutePath() + ", RefMet will be empty");
+			Files.write(new File(MWUrls.M_MWB_CACHE, "refmet.csv").toPath(),
+					"\" refmet_name\",super_class,main_class,sub_class,formula,exactmass,inchi_key,pubchem_cid\n".getBytes(StandardCharsets.UTF_8));
+		}
+		// link out config, deployed with MW_CACHE rather than downloaded
+		File linkOutMap = new File(theCaptureDir, "metabolite_map.tsv");
+		if (linkOutMap.exists())
+		{
+			FileUtils.copyFile(linkOutMap, new File(MWUrls.M_MWB_CACHE, "metabolite_map.tsv"));
+		}
+		else
+		{
+			StdMwDownload.printWarn("ReplayBenchmark no metabolite_map.tsv in " + theCaptureDir.getAbsolutePath() + ", link out conversion will fail");
+		}
+		MWUrls.M_REST_BASE = theServer.getBaseUrl();
+		ResponseCache.M_ENABLED = false;
+		if (ReplayServer.M_MODE_REPLAY.equals(theMode))
+		{
+			RequestGovernor.M_REQUESTS_PER_SECOND = 0.0;
+			RequestGovernor.M_MAX_IN_FLIGHT = 0;
+		}
+	}
+
+	static private void runBenchmark(int theStudyLimit) throws Exception
+	{
+		LinkedHashMap<String, Long> times = new LinkedHashMap<>();
+		String timestamp = StdMwDownload.getTimestamp();
+		long start = System.currentTimeMillis();
+		SummaryUtil su = new SummaryUtil();
+		su.fetchSummaries();
+		times.put("summaries", System.currentTimeMillis() - start);
+		//
+		ArrayList<Summary> studies = new ArrayList<>();
+		HashMap<String, Summary> studyHashes = new HashMap<>();
+		for (Summary summary : su.getAll())
+		{
+			if (studies.size()<theStudyLimit)
+			{
+				studies.add(summary);
+				studyHashes.put(summary.hash, summary);
+			}
+		}
+		start = System.currentTimeMillis();
+		AnalysisUtil au = new AnalysisUtil();
+		ParallelFetch.fetchAll("benchmarkAnalyses", studies, summary -> au.fetchAnalyses(summary.hash, summary.study_id));
+		times.put("analyses", System.currentTimeMillis() - start);
+		//
+		start = System.currentTimeMillis();
+		MetaboliteUtil mu = MetaboliteUtil.updateMetaboliteUtil(timestamp, au, false);
+		times.put("metabolites", System.currentTimeMillis() - start);
+		start = System.currentTimeMillis();
+		RefMetUtil ru = RefMetUtil.updateRefMetUtil(timestamp, false);
+		times.put("refmet", System.currentTimeMillis() - start);
+		start = System.currentTimeMillis();
+		OtherIdsUtil ou = OtherIdsUtil.updateOtherIdsUtil(timestamp, ru, mu, false);
+		times.put("otherids", System.currentTimeMillis() - start);
+		//
+		TreeSet<Analysis> analyses = au.getAnalysesAll();
+		TreeSet<String> studyIds = new TreeSet<>();
+		for (Summary summary : studies)
+		{
+			studyIds.add(summary.study_id);
+		}
+		clearCaches();
+		start = System.currentTimeMillis();
+		ParallelFetch.fetchAll("benchmarkDatatables", analyses, analysis ->
+		{
+			DatatableUtil.getDatatableRaw(OutputStream.nullOutputStream(), analysis.analysis_id);
+			DatatableUtil.getDatatableMSC(OutputStream.nullOutputStream(), analysis.analysis_id);
+			DatatableUtil.getDatatableDC(OutputStream.nullOutputStream(), analysis.analysis_id);
+		});
+		times.put("datatables", System.currentTimeMillis() - start);
+		//
+		start = System.currentTimeMillis();
+		ParallelFetch.fetchAll("benchmarkFactors", studyIds, studyId -> FactorUtil.getBatchesTSV(OutputStream.nullOutputStream(), studyId));
+		times.put("factors", System.currentTimeMillis() - start);
+		//
+		clearCaches();
+		start = System.currentTimeMillis();
+		ProcessUtil pu = ProcessUtil.readNewestProcessFile(mu, ru, ou);
+		ArrayList<ProcessEntry> entries = new ArrayList<>();
+		for (Analysis analysis : analyses)
+		{
+			entries.add(new ProcessEntry(analysis, studyHashes.get(analysis.study_hash), timestamp, ProcessUtil.M_STATUS_NEW, null));
+		}
+		pu.addNewEntries(entries, 0);
+		pu.processPending(timestamp);
+		times.put("processPending", System.currentTimeMillis() - start);
+		//
+		clearCaches();
+		start = System.currentTimeMillis();
+		AtomicInteger failed = new AtomicInteger(0);
+		ParallelFetch.fetchAll("benchmarkDownloadConvertSingle", analyses, analysis ->
+		{
+			try
+			{
+				new DownloadConvertSingle(analysis, au, ru, ou, mu).dAndC();
+			}
+			catch (Exception exp)
+			{
+				failed.incrementAndGet();
+				StdMwDownload.printErr("ReplayBenchmark dAndC failed for " + analysis.analysis_id, exp);
+			}
+		});
+		times.put("downloadConvertSingle", System.currentTimeMillis() - start);
+		//
+		StdMwDownload.printLn("ReplayBenchmark studies=" + studies.size() + " analyses=" + analyses.size() + " dAndC_failed=" + failed.get());
+		long total = 0;
+		for (Map.Entry<String, Long> entry : times.entrySet())
+		{
+			StdMwDownload.printLn("ReplayBenchmark " + entry.getKey() + " ms=" + entry.getValue());
+			total += entry.getValue();
+		}
+		StdMwDownload.printLn("ReplayBenchmark total ms=" + total);
+		RequestGovernor.printStats();
+		DatatableCache.printStats();
+	}
+
+	static private void clearCaches()
+	{
+		DatatableCache.clear();
+		FactorUtil.clearCache();
+	}
+}
@@ -0,0 +1,284 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+package edu.mda.bcb.stdmwutils.replay;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import edu.mda.bcb.stdmwutils.utils.MWHttpClient;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Local stand-in for the Metabolomics Workbench REST API, for offline and
+ * reproducible benchmarks. Point MWUrls.M_REST_BASE at getBaseUrl().
+ *
+ * In record mode, requests not already captured are forwarded to the
+ * upstream REST base, and the status, content type and body are saved in
+ * the capture directory. Forwarding uses the shared HttpClient directly,
+ * not MWHttpClient.send, since the loopback request waiting on it already
+ * holds a RequestGovernor slot. Transient responses (5xx, 429) are passed
+ * through but not saved, so a later run records them again. In replay mode, only captured responses are
+ * served, and anything else gets a 404. Each captured response is
+ * delayed by the configured latency.
+ *
+ * @author Tod-Casasent
+ */
+public class ReplayServer
+{
+	static final public String M_MODE_RECORD = "record";
+	static final public String M_MODE_REPLAY = "replay";
+
+	private final File mCaptureDir;
+	private final String mUpstreamBase;
+	private final String mMode;
+	private final long mLatencyMs;
+	private HttpServer mServer = null;
+	private ExecutorService mExecutor = null;
+	private final AtomicLong mServed = new AtomicLong(0);
+	private final AtomicLong mRecorded = new AtomicLong(0);
+	private final AtomicLong mMissing = new AtomicLong(0);
+
+	/**
+	 * @param theCaptureDir directory of captured responses
+	 * @param theUpstreamBase REST base to record from, such as https://www.metabolomicsworkbench.org/rest/
+	 * @param theMode M_MODE_RECORD or M_MODE_REPLAY
+	 * @param theLatencyMs delay added to each response
+	 */
+	public ReplayServer(File theCaptureDir, String theUpstreamBase, String theMode, long theLatencyMs)
+	{
+		mCaptureDir = theCaptureDir;
+		mUpstreamBase = theUpstreamBase;
+		mMode = theMode;
+		mLatencyMs = theLatencyMs;
+	}
+
+	/**
+	 * Start on a free port on the loopback address.
+	 *
+	 * @param theThreads number of request threads
+	 * @throws IOException
+	 */
+	public void start(int theThreads) throws IOException
+	{
+		mCaptureDir.mkdirs();
+		mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		mExecutor = Executors.newFixedThreadPool(theThreads);
+		mServer.setExecutor(mExecutor);
+		mServer.createContext("/rest/", (HttpExchange theExchange) ->
+		{
+			try
+			{
+				handle(theExchange);
+			}
+			catch (Exception exp)
+			{
+				StdMwDownload.printErr("ReplayServer error for " + theExchange.getRequestURI(), exp);
+				sendBytes(theExchange, 500, "text/plain", exp.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			finally
+			{
+				theExchange.close();
+			}
+		});
+		mServer.start();
+		StdMwDownload.printLn("ReplayServer " + mMode + " at " + getBaseUrl() + " captures=" + mCaptureDir.getAbsolutePath());
+	}
+
+	public void stop()
+	{
+		if (null!=mServer)
+		{
+			mServer.stop(0);
+			mExecutor.shutdownNow();
+			mServer = null;
+		}
+		StdMwDownload.printLn("ReplayServer served=" + mServed.get() + " recorded=" + mRecorded.get() + " missing=" + mMissing.get());
+	}
+
+	public String getBaseUrl()
+	{
+		return "http://" + mServer.getAddress().getHostString() + ":" + mServer.getAddress().getPort() + "/rest/";
+	}
+
+	public long getServed()
+	{
+		return mServed.get();
+	}
+
+	public long getRecorded()
+	{
+		return mRecorded.get();
+	}
+
+	public long getMissing()
+	{
+		return mMissing.get();
+	}
+
+	private void handle(HttpExchange theExchange) throws IOException, NoSuchAlgorithmException
+	{
+		// path after /rest/, with query
+		String rawPath = theExchange.getRequestURI().getRawPath().substring("/rest/".length());
+		String rawQuery = theExchange.getRequestURI().getRawQuery();
+		if (null!=rawQuery)
+		{
+			rawPath = rawPath + "?" + rawQuery;
+		}
+		String key = theExchange.getRequestMethod() + " " + rawPath;
+		String name = Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+		File bodyFile = new File(mCaptureDir, name + ".body");
+		File metaFile = new File(mCaptureDir, name + ".meta");
+		if ((!metaFile.exists())&&(M_MODE_RECORD.equals(mMode)))
+		{
+			if (!record(theExchange, rawPath, key, bodyFile, metaFile))
+			{
+				// transient response already sent, not captured
+				return;
+			}
+		}
+		if (metaFile.exists())
+		{
+			Properties meta = new Properties();
+			try (Reader reader = Files.newBufferedReader(metaFile.toPath(), StandardCharsets.UTF_8))
+			{
+				meta.load(reader);
+			}
+			delay();
+			sendBytes(theExchange, Integer.parseInt(meta.getProperty("status")), meta.getProperty("content_type"), Files.readAllBytes(bodyFile.toPath()));
+			mServed.incrementAndGet();
+		}
+		else
+		{
+			mMissing.incrementAndGet();
+			StdMwDownload.printWarn("ReplayServer not recorded " + key);
+			sendBytes(theExchange, 404, "text/plain", ("Not recorded: " + key).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Forward the request upstream and save the response.
+	 *
+	 * @return false if the response was transient and was sent without saving it
+	 */
+	private boolean record(HttpExchange theExchange, String theRawPath, String theKey, File theBodyFile, File theMetaFile) throws IOException
+	{
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(mUpstreamBase + theRawPath))
+				.timeout(Duration.ofMillis(MWHttpClient.M_REQUEST_TIMEOUT_MS));
+		byte [] requestBody = theExchange.getRequestBody().readAllBytes();
+		if (requestBody.length>0)
+		{
+			builder.method(theExchange.getRequestMethod(), HttpRequest.BodyPublishers.ofByteArray(requestBody));
+		}
+		else
+		{
+			builder.method(theExchange.getRequestMethod(), HttpRequest.BodyPublishers.noBody());
+		}
+		HttpResponse<InputStream> response = null;
+		try
+		{
+			// not MWHttpClient.send, which would wait for a second governor slot
+			response = MWHttpClient.getClient(true).send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		}
+		catch (InterruptedException exp)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted recording " + theKey, exp);
+		}
+		int status = response.statusCode();
+		String contentType = response.headers().firstValue("Content-Type").orElse("application/octet-stream");
+		if ((status>=500)||(429==status))
+		{
+			byte [] body;
+			try (InputStream is = response.body())
+			{
+				body = is.readAllBytes();
+			}
+			StdMwDownload.printWarn("ReplayServer not recording transient " + theKey + " status=" + status);
+			sendBytes(theExchange, status, contentType, body);
+			return false;
+		}
+		File tmpBody = File.createTempFile("record", ".tmp", mCaptureDir);
+		try (InputStream is = response.body())
+		{
+			Files.copy(is, tmpBody.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		Properties meta = new Properties();
+		meta.setProperty("key", theKey);
+		meta.setProperty("status", Integer.toString(status));
+		meta.setProperty("content_type", contentType);
+		File tmpMeta = File.createTempFile("record", ".tmp", mCaptureDir);
+		try (Writer writer = Files.newBufferedWriter(tmpMeta.toPath(), StandardCharsets.UTF_8))
+		{
+			meta.store(writer, null);
+		}
+		// body first, meta marks the capture complete
+		Files.move(tmpBody.toPath(), theBodyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Files.move(tmpMeta.toPath(), theMetaFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		mRecorded.incrementAndGet();
+		StdMwDownload.printLn("ReplayServer recorded " + theKey + " status=" + status);
+		return true;
+	}
+
+	private void delay() throws IOException
+	{
+		if (mLatencyMs>0)
+		{
+			try
+			{
+				Thread.sleep(mLatencyMs);
+			}
+			catch (InterruptedException exp)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted in latency delay", exp);
+			}
+		}
+	}
+
+	static private void sendBytes(HttpExchange theExchange, int theStatus, String theContentType, byte [] theBody) throws IOException
+	{
+		theExchange.getResponseHeaders().set("Content-Type", theContentType);
+		if (theBody.length>0)
+		{
+			theExchange.sendResponseHeaders(theStatus, theBody.length);
+			try (OutputStream os = theExchange.getResponseBody())
+			{
+				os.write(theBody);
+			}
+		}
+		else
+		{
+			// -1 means no body
+			theExchange.sendResponseHeaders(theStatus, -1);
+		}
+	}
+}
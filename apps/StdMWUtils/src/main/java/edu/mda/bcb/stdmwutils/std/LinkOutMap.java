@@ -0,0 +1,142 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils.std;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import edu.mda.bcb.stdmwutils.StdMwException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed contents of metabolite_map.tsv, which lists the NGCHM link out
+ * types and the metabolites.tsv column used for each. The file does not
+ * change during a run, so the parsed map is cached and shared by all
+ * conversions.
+ *
+ * @author Tod-Casasent
+ */
+public class LinkOutMap
+{
+	static private LinkOutMap M_CACHED = null;
+
+	/**
+	 * Get the parsed map for theMetaboliteMapFile, reading the file only if
+	 * it is not the file cached or if it changed on disk.
+	 *
+	 * @param theMetaboliteMapFile metabolite_map.tsv file to read
+	 * @return parsed LinkOutMap
+	 * @throws IOException
+	 * @throws StdMwException
+	 */
+	synchronized static public LinkOutMap getLinkOutMap(File theMetaboliteMapFile) throws IOException, StdMwException
+	{
+		String path = theMetaboliteMapFile.getAbsolutePath();
+		long modified = theMetaboliteMapFile.lastModified();
+		if ((null==M_CACHED)||(!M_CACHED.mPath.equals(path))||(M_CACHED.mModified!=modified))
+		{
+			StdMwDownload.printLn("LinkOutMap read " + path);
+			M_CACHED = new LinkOutMap(path, modified);
+			M_CACHED.read(theMetaboliteMapFile);
+		}
+		return M_CACHED;
+	}
+
+	private final String mPath;
+	private final long mModified;
+	// link outs, ".|." delimited
+	private String mRowType = null;
+	// metabolites.tsv column used for the feature id, and first link out
+	private String mMetaboliteIdCol = null;
+	// metabolites.tsv columns for remaining link outs, in order
+	private final ArrayList<String> mHeaderOrder;
+
+	private LinkOutMap(String thePath, long theModified)
+	{
+		mPath = thePath;
+		mModified = theModified;
+		mHeaderOrder = new ArrayList<>();
+	}
+
+	private void read(File theMetaboliteMapFile) throws IOException, StdMwException
+	{
+		try(BufferedReader br = java.nio.file.Files.newBufferedReader(theMetaboliteMapFile.toPath(), Charset.availableCharsets().get("UTF-8")))
+		{
+			// headers
+			String line = br.readLine();
+			if (null==line)
+			{
+				throw new StdMwException("LinkOutMap empty file " + theMetaboliteMapFile.getAbsolutePath());
+			}
+			List<String> headers = Arrays.asList(line.split("\t", -1));
+			int linkType = headers.indexOf("link_type");
+			int headerName = headers.indexOf("header_name");
+			// first summary line
+			line = br.readLine();
+			while(null!=line)
+			{
+				String [] splitted = line.split("\t", -1);
+				String linkTypeVal = splitted[linkType];
+				String headerNameVal = splitted[headerName];
+				if (null==mRowType)
+				{
+					mRowType = linkTypeVal;
+					mMetaboliteIdCol = headerNameVal;
+				}
+				else
+				{
+					mRowType = mRowType + ".|." + linkTypeVal;
+					mHeaderOrder.add(headerNameVal);
+				}
+				line = br.readLine();
+			}
+		}
+	}
+
+	public String getRowType()
+	{
+		return mRowType;
+	}
+
+	public String getMetaboliteIdCol()
+	{
+		return mMetaboliteIdCol;
+	}
+
+	public List<String> getHeaderOrder()
+	{
+		return Collections.unmodifiableList(mHeaderOrder);
+	}
+
+	/**
+	 * Resolve the metabolites.tsv columns used for link outs, once per file.
+	 *
+	 * @param theHeaders headers from metabolites.tsv
+	 * @return indexes into a metabolites.tsv row, the feature id column first, followed by the link out columns in order
+	 */
+	public int[] getProjection(String [] theHeaders)
+	{
+		List<String> headers = Arrays.asList(theHeaders);
+		int [] projection = new int[mHeaderOrder.size()+1];
+		projection[0] = headers.indexOf(mMetaboliteIdCol);
+		for (int index=0; index<mHeaderOrder.size(); index++)
+		{
+			projection[index+1] = headers.indexOf(mHeaderOrder.get(index));
+		}
+		return projection;
+	}
+}
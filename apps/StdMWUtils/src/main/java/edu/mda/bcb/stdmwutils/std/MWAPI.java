@@ -28,7 +28,6 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.TreeSet;
 
@@ -56,7 +55,7 @@ public class MWAPI
 		mTimestampDir = theTimestampDir;
 	}
 	
-	public static Comparator SAMPLE_SORTED_ORDER = new Comparator<ProcessEntry>()
+	public static Comparator<ProcessEntry> SAMPLE_SORTED_ORDER = new Comparator<ProcessEntry>()
 	{
 		@Override
 		public int compare(ProcessEntry p1, ProcessEntry p2)
@@ -110,8 +109,8 @@ public class MWAPI
 				}
 			}
 		}
-		// sort list from largest to smallest sample count
-		Collections.sort(peList, SAMPLE_SORTED_ORDER);
+		// sort list by estimated cost (see ProcessScheduler.M_ORDER)
+		peList = thePU.mScheduler.order(peList);
 		StdMwDownload.printLn("SMWPipeline::processableCacheEntries - eligible studies = " + peList.size());
 		return peList;
 	}
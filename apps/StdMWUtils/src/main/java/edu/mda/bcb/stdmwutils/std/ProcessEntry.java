@@ -33,6 +33,8 @@ public class ProcessEntry implements Comparable<ProcessEntry>
 	public Summary mSu = null;
 	public String mTimestamp = null;
 	public String mStatus = null;
+	// SHA-256 of downloaded data, null until downloaded
+	public String mContentHash = null;
 	
 	public String getZipName()
 	{
@@ -72,7 +74,8 @@ public class ProcessEntry implements Comparable<ProcessEntry>
 	{
 		return "hash\ttimestamp\tstatus" + 
 				addPrefixToHeaderString("Analysis.", Analysis.getHeaderString()) +
-				addPrefixToHeaderString("Summary.", Summary.getHeaderString());
+				addPrefixToHeaderString("Summary.", Summary.getHeaderString()) +
+				"\tcontent_hash";
 	}
 	
 	static public ProcessEntry getFromRowString(ArrayList<String> theHeaders, String theRowString) throws NoSuchAlgorithmException
@@ -84,6 +87,16 @@ public class ProcessEntry implements Comparable<ProcessEntry>
 		Analysis an = Analysis.getFromRowString(theHeaders, theRowString, "Analysis.");
 		Summary su = Summary.getFromRowString(theHeaders, theRowString, "Summary.");
 		ProcessEntry processEntry = new ProcessEntry(an, su, timestamp, status, hash);
+		// content_hash not present in older process files
+		int contentHashIndex = theHeaders.indexOf("content_hash");
+		if (contentHashIndex>-1)
+		{
+			String contentHash = splitted[contentHashIndex];
+			if (!"NA".equals(contentHash))
+			{
+				processEntry.mContentHash = contentHash;
+			}
+		}
 		return processEntry;
 	}
 
@@ -93,7 +106,8 @@ public class ProcessEntry implements Comparable<ProcessEntry>
 				MWUrls.cleanString(mTimestamp, false) + "\t" + 
 				MWUrls.cleanString(mStatus, false) + "\t" + 
 				mAn.getRowString() + "\t" +
-				mSu.getRowString();
+				mSu.getRowString() + "\t" +
+				MWUrls.cleanString(mContentHash, false);
 	};
 	
 	@Override
@@ -0,0 +1,289 @@
+/*
+ *  Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+ *
+ *  This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+ *  MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+ */
+package edu.mda.bcb.stdmwutils.std;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
+import edu.mda.bcb.stdmwutils.mwdata.Metabolite;
+import edu.mda.bcb.stdmwutils.utils.MetaboliteUtil;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Orders ProcessEntry work by estimated cost. Cost is sample_count times
+ * metabolite_count, converted to milliseconds using timings from earlier
+ * runs (kept in mwb_schedule.tsv in the indexes directory). Entries that
+ * failed recently are always placed after the others.
+ *
+ * @author Tod-Casasent
+ */
+public class ProcessScheduler
+{
+	// largest sample count first (original order)
+	static final public String M_ORDER_LARGEST = "largest";
+	// cheapest estimated cost first
+	static final public String M_ORDER_SHORTEST = "shortest";
+	// mostly cheapest first, with a large entry every M_FAIR_SMALL_PER_LARGE entries
+	static final public String M_ORDER_FAIR = "fair";
+
+	static public String M_ORDER = M_ORDER_FAIR;
+	static public int M_FAIR_SMALL_PER_LARGE = 4;
+	// failures within this window push an entry to the end of the queue
+	static public long M_FAILURE_WINDOW_MS = 7L * 24L * 60L * 60L * 1000L;
+	// used until a timing has been recorded
+	static public double M_DEFAULT_MS_PER_CELL = 0.5;
+
+	static public String M_SCHEDULE_FILE = "mwb_schedule.tsv";
+
+	static private class History
+	{
+		public long mCells = 0;
+		public long mMillis = 0;
+		public long mLastFailure = 0;
+		public int mFailures = 0;
+	}
+
+	private final MetaboliteUtil mMu;
+	private final TreeMap<String, History> mHistory;
+
+	public ProcessScheduler(MetaboliteUtil theMu)
+	{
+		mMu = theMu;
+		mHistory = new TreeMap<>();
+	}
+
+	public void readHistory() throws IOException
+	{
+		File scheduleFile = new File(MWUrls.M_MWB_INDEXES, M_SCHEDULE_FILE);
+		if (scheduleFile.exists())
+		{
+			try(BufferedReader br = java.nio.file.Files.newBufferedReader(scheduleFile.toPath(), Charset.availableCharsets().get("UTF-8")))
+			{
+				// headers
+				String line = br.readLine();
+				List<String> headers = Arrays.asList(line.split("\t", -1));
+				int idCol = headers.indexOf("analysis_id");
+				int cellsCol = headers.indexOf("cells");
+				int millisCol = headers.indexOf("millis");
+				int lastFailureCol = headers.indexOf("last_failure");
+				int failuresCol = headers.indexOf("failures");
+				// first entry line
+				line = br.readLine();
+				while(null!=line)
+				{
+					String [] splitted = line.split("\t", -1);
+					History history = new History();
+					history.mCells = Long.parseLong(splitted[cellsCol]);
+					history.mMillis = Long.parseLong(splitted[millisCol]);
+					history.mLastFailure = Long.parseLong(splitted[lastFailureCol]);
+					history.mFailures = Integer.parseInt(splitted[failuresCol]);
+					mHistory.put(splitted[idCol], history);
+					line = br.readLine();
+				}
+			}
+		}
+	}
+
+	synchronized public void writeHistory() throws IOException
+	{
+		OpenOption[] options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
+		File scheduleFile = new File(MWUrls.M_MWB_INDEXES, M_SCHEDULE_FILE);
+		try(BufferedWriter bw = java.nio.file.Files.newBufferedWriter(scheduleFile.toPath(), Charset.availableCharsets().get("UTF-8"), options))
+		{
+			bw.write("analysis_id\tcells\tmillis\tlast_failure\tfailures");
+			bw.newLine();
+			for (String analysisId : mHistory.keySet())
+			{
+				History history = mHistory.get(analysisId);
+				bw.write(analysisId + "\t" + history.mCells + "\t" + history.mMillis + "\t" + history.mLastFailure + "\t" + history.mFailures);
+				bw.newLine();
+			}
+		}
+	}
+
+	synchronized public void recordSuccess(ProcessEntry thePe, long theMillis)
+	{
+		History history = getHistory(thePe);
+		history.mCells = getCells(thePe);
+		history.mMillis = theMillis;
+		history.mFailures = 0;
+	}
+
+	synchronized public void recordFailure(ProcessEntry thePe, long theMillis)
+	{
+		History history = getHistory(thePe);
+		history.mCells = getCells(thePe);
+		history.mMillis = theMillis;
+		history.mLastFailure = System.currentTimeMillis();
+		history.mFailures += 1;
+	}
+
+	private History getHistory(ProcessEntry thePe)
+	{
+		History history = mHistory.get(thePe.mAn.analysis_id);
+		if (null==history)
+		{
+			history = new History();
+			mHistory.put(thePe.mAn.analysis_id, history);
+		}
+		return history;
+	}
+
+	public long getCells(ProcessEntry thePe)
+	{
+		long metabolites = 1;
+		TreeSet<Metabolite> mblts = mMu.getMetabolitesForAnalysis(thePe.mAn.analysis_id);
+		if ((null!=mblts)&&(mblts.size()>0))
+		{
+			metabolites = mblts.size();
+		}
+		return Math.max(1, thePe.mSu.sample_count) * metabolites;
+	}
+
+	protected double getMillisPerCell()
+	{
+		long cells = 0;
+		long millis = 0;
+		for (History history : mHistory.values())
+		{
+			if ((0==history.mFailures)&&(history.mCells>0)&&(history.mMillis>0))
+			{
+				cells += history.mCells;
+				millis += history.mMillis;
+			}
+		}
+		double msPerCell = M_DEFAULT_MS_PER_CELL;
+		if (cells>0)
+		{
+			msPerCell = (double)millis / (double)cells;
+		}
+		return msPerCell;
+	}
+
+	/**
+	 * Estimated processing time in milliseconds. Uses the measured time if
+	 * this analysis completed before, otherwise the cell count times the
+	 * average time per cell.
+	 *
+	 * @param thePe entry to estimate
+	 * @param theMsPerCell from getMillisPerCell
+	 * @return estimated milliseconds
+	 */
+	protected double estimateCost(ProcessEntry thePe, double theMsPerCell)
+	{
+		double cost = getCells(thePe) * theMsPerCell;
+		History history = mHistory.get(thePe.mAn.analysis_id);
+		if ((null!=history)&&(0==history.mFailures)&&(history.mMillis>0))
+		{
+			cost = history.mMillis;
+		}
+		return cost;
+	}
+
+	protected boolean recentlyFailed(ProcessEntry thePe)
+	{
+		boolean failed = false;
+		History history = mHistory.get(thePe.mAn.analysis_id);
+		if ((null!=history)&&(history.mFailures>0))
+		{
+			failed = (System.currentTimeMillis() - history.mLastFailure) < M_FAILURE_WINDOW_MS;
+		}
+		return failed;
+	}
+
+	/**
+	 * Order entries according to M_ORDER, with recently failed entries last.
+	 *
+	 * @param theEntries entries to order
+	 * @return new list in processing order
+	 */
+	synchronized public ArrayList<ProcessEntry> order(List<ProcessEntry> theEntries)
+	{
+		double msPerCell = getMillisPerCell();
+		TreeMap<ProcessEntry, Double> costs = new TreeMap<>();
+		ArrayList<ProcessEntry> usable = new ArrayList<>();
+		ArrayList<ProcessEntry> failed = new ArrayList<>();
+		for (ProcessEntry pe : theEntries)
+		{
+			costs.put(pe, estimateCost(pe, msPerCell));
+			if (recentlyFailed(pe))
+			{
+				failed.add(pe);
+			}
+			else
+			{
+				usable.add(pe);
+			}
+		}
+		Comparator<ProcessEntry> cheapest = new Comparator<ProcessEntry>()
+		{
+			@Override
+			public int compare(ProcessEntry p1, ProcessEntry p2)
+			{
+				int comp = Double.compare(costs.get(p1), costs.get(p2));
+				if (0==comp)
+				{
+					comp = p1.compareTo(p2);
+				}
+				return comp;
+			}
+		};
+		ArrayList<ProcessEntry> ordered = new ArrayList<>();
+		if (M_ORDER_LARGEST.equals(M_ORDER))
+		{
+			Collections.sort(usable, MWAPI.SAMPLE_SORTED_ORDER);
+			ordered.addAll(usable);
+		}
+		else if (M_ORDER_SHORTEST.equals(M_ORDER))
+		{
+			Collections.sort(usable, cheapest);
+			ordered.addAll(usable);
+		}
+		else
+		{
+			Collections.sort(usable, cheapest);
+			int small = 0;
+			int large = usable.size() - 1;
+			while (small<=large)
+			{
+				for (int count=0; (count<M_FAIR_SMALL_PER_LARGE)&&(small<=large); count++)
+				{
+					ordered.add(usable.get(small));
+					small += 1;
+				}
+				if (small<=large)
+				{
+					ordered.add(usable.get(large));
+					large -= 1;
+				}
+			}
+		}
+		Collections.sort(failed, cheapest);
+		ordered.addAll(failed);
+		StdMwDownload.printLn("ProcessScheduler::order - order=" + M_ORDER + " entries=" + ordered.size() + " recently failed=" + failed.size());
+		return ordered;
+	}
+}
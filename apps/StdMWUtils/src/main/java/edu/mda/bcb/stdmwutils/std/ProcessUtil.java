@@ -18,11 +18,13 @@ import edu.mda.bcb.samval.matrix.Builder;
 import edu.mda.bcb.samval.matrix.Matrix;
 import edu.mda.bcb.stdmwutils.StdMwDownload;
 import edu.mda.bcb.stdmwutils.StdMwException;
+import edu.mda.bcb.stdmwutils.indexes.DataArchive;
+import edu.mda.bcb.stdmwutils.indexes.DataIndex;
 import edu.mda.bcb.stdmwutils.indexes.JsonDataset;
 import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
 import edu.mda.bcb.stdmwutils.mwdata.MwTable;
-import edu.mda.bcb.stdmwutils.utils.DatatableUtil;
-import edu.mda.bcb.stdmwutils.utils.FactorUtil;
+import edu.mda.bcb.stdmwutils.utils.AsyncDownload;
+import edu.mda.bcb.stdmwutils.utils.DatatableCache;
 import edu.mda.bcb.stdmwutils.utils.MetaboliteMapUtil;
 import edu.mda.bcb.stdmwutils.utils.MetaboliteUtil;
 import edu.mda.bcb.stdmwutils.utils.OtherIdsUtil;
@@ -31,17 +33,24 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.OpenOption;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -61,6 +70,7 @@ public class ProcessUtil
 		File processIndex = new File(MWUrls.M_MWB_INDEXES, "mwb_process.tsv");
 		ProcessUtil pu = new ProcessUtil(theMu, theRu, theOu);
 		pu.readProcesses(processIndex);
+		pu.mScheduler.readHistory();
 		return pu;
 	}
 	
@@ -68,12 +78,14 @@ public class ProcessUtil
 	public MetaboliteUtil mMu = null;
 	public RefMetUtil mRu = null;
 	public OtherIdsUtil mOu = null;
+	public ProcessScheduler mScheduler = null;
 
 	private ProcessUtil(MetaboliteUtil theMu, RefMetUtil theRu, OtherIdsUtil theOu)
 	{
 		mMu = theMu;
 		mRu = theRu;
 		mOu = theOu;
+		mScheduler = new ProcessScheduler(theMu);
 		mHashToProcessEntries = new TreeMap<>();
 	}
 	
@@ -159,11 +171,21 @@ public class ProcessUtil
 	
 	public void processPending(String theTimestamp) throws IOException, NoSuchAlgorithmException, MalformedURLException, StdMwException, Exception
 	{
+		ArrayList<ProcessEntry> pending = new ArrayList<>();
 		for (ProcessEntry pe : mHashToProcessEntries.values())
 		{
-			if (!pe.mStatus.equals(ProcessUtil.M_STATUS_FAILED))
+			if ((!pe.mStatus.equals(ProcessUtil.M_STATUS_FAILED))&&(!pe.mStatus.equals(ProcessUtil.M_STATUS_SUCCESS)))
 			{
-				if (!pe.mStatus.equals(ProcessUtil.M_STATUS_SUCCESS))
+				pending.add(pe);
+			}
+		}
+		try
+		{
+			// cheaper entries first, so small studies are available without waiting on large ones
+			for (ProcessEntry pe : mScheduler.order(pending))
+			{
+				long start = System.currentTimeMillis();
+				try
 				{
 					if (pe.mStatus.equals(ProcessUtil.M_STATUS_NEW))
 					{
@@ -172,6 +194,19 @@ public class ProcessUtil
 						downloadDataOptions(pe, theTimestamp);
 						this.writeProcesses();
 					}
+					if ((pe.mStatus.equals(ProcessUtil.M_STATUS_DOWNLOADED))&&(null==pe.mContentHash))
+					{
+						// if data is unchanged from last successful version, reuse that ZIP
+						pe.mContentHash = hashDownloadedContent(getDataVersionedDir(pe, false));
+						ProcessEntry prior = findMatchingContent(pe);
+						if (null!=prior)
+						{
+							StdMwDownload.printLn("processPending unchanged data=" + pe.mAn.analysis_id + " reuse " + prior.mTimestamp);
+							FileUtils.deleteQuietly(getDataVersionedDir(pe, false));
+							pe.mStatus = ProcessUtil.M_STATUS_SUCCESS;
+						}
+						this.writeProcesses();
+					}
 					if (pe.mStatus.equals(ProcessUtil.M_STATUS_DOWNLOADED))
 					{
 						StdMwDownload.printLn("processPending convertDataOptions=" + pe.mAn.analysis_id);
@@ -188,8 +223,98 @@ public class ProcessUtil
 						this.writeProcesses();
 					}
 				}
+				catch(Exception exp)
+				{
+					// record failure so the entry is deprioritized next run
+					mScheduler.recordFailure(pe, System.currentTimeMillis() - start);
+					mScheduler.writeHistory();
+					throw exp;
+				}
+				if (pe.mStatus.equals(ProcessUtil.M_STATUS_SUCCESS))
+				{
+					mScheduler.recordSuccess(pe, System.currentTimeMillis() - start);
+				}
+				else
+				{
+					mScheduler.recordFailure(pe, System.currentTimeMillis() - start);
+				}
+				mScheduler.writeHistory();
 			}
 		}
+		finally
+		{
+			// datatables are not needed again until the next refresh
+			DatatableCache.printStats();
+			DatatableCache.clear();
+		}
+	}
+	
+	static final public String [] M_CONTENT_FILES = { "raw_data.tsv", "merge_data.tsv", "drop_data.tsv", "batch_factors.tsv", "metabolites.tsv" };
+	
+	/**
+	 * SHA-256 of the downloaded data files (name and contents, in
+	 * M_CONTENT_FILES order). Files not downloaded are skipped.
+	 * 
+	 * @param theDldDir versioned data directory
+	 * @return hex string of hash
+	 * @throws NoSuchAlgorithmException
+	 * @throws IOException 
+	 */
+	public String hashDownloadedContent(File theDldDir) throws NoSuchAlgorithmException, IOException
+	{
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		byte [] buffer = new byte[64*1024];
+		for (String name : M_CONTENT_FILES)
+		{
+			File contentFile = new File(theDldDir, name);
+			if (contentFile.exists())
+			{
+				digest.update(name.getBytes(StandardCharsets.UTF_8));
+				try(InputStream is = java.nio.file.Files.newInputStream(contentFile.toPath()))
+				{
+					for (int bytesRead; (bytesRead = is.read(buffer)) >= 0;)
+					{
+						digest.update(buffer, 0, bytesRead);
+					}
+				}
+			}
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+	
+	/**
+	 * Find the last successful entry for the same analysis, if it has the
+	 * same content hash and its ZIP still exists. (Each analysis has one
+	 * ZIP, holding the last successful version.)
+	 * 
+	 * @param thePe newly downloaded entry, with mContentHash set
+	 * @return matching prior entry, or null
+	 */
+	public ProcessEntry findMatchingContent(ProcessEntry thePe)
+	{
+		ProcessEntry last = null;
+		for (ProcessEntry pe : mHashToProcessEntries.values())
+		{
+			if ((pe!=thePe)&&(pe.mStatus.equals(ProcessUtil.M_STATUS_SUCCESS))&&
+					(pe.mAn.analysis_id.equals(thePe.mAn.analysis_id))&&
+					(pe.mAn.study_id.equals(thePe.mAn.study_id)))
+			{
+				if ((null==last)||(pe.mTimestamp.compareTo(last.mTimestamp)>0))
+				{
+					last = pe;
+				}
+			}
+		}
+		ProcessEntry match = null;
+		if ((null!=last)&&(thePe.mContentHash.equals(last.mContentHash)))
+		{
+			File zipFile = new File(getZipPath(thePe), thePe.getZipName());
+			if (zipFile.exists())
+			{
+				match = last;
+			}
+		}
+		return match;
 	}
 	
 	protected int convertBatchOptions(File theOldBatch, File theNewBatch, File theMatrixData,
@@ -377,53 +502,52 @@ public class ProcessUtil
 		File dldDir = getDataVersionedDir(thePe, true);
 		try
 		{
-			// download all versions of data (Raw, Drop Class, Merge Sample-Class)
+			// download all versions of data (Raw, Drop Class, Merge Sample-Class) and Batch/Factors and Metabolites at the same time
 			OpenOption[] options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
 			File rawFile = new File(dldDir, "raw_data.tsv");
 			File rawUrl = new File(dldDir, "raw_url.tsv");
+			File mergeFile = new File(dldDir, "merge_data.tsv");
+			File mergeUrl = new File(dldDir, "merge_url.tsv");
+			File dropFile = new File(dldDir, "drop_data.tsv");
+			File dropUrl = new File(dldDir, "drop_url.tsv");
+			File batchFile = new File(dldDir, "batch_factors.tsv");
+			File metaFile = new File(dldDir, "metabolites.tsv");
+			MetaboliteMapUtil mmu = MetaboliteMapUtil.getInstance(mMu, mRu, mOu);
+			CompletableFuture<String> rawFuture = AsyncDownload.getDatatableRaw(rawFile.toPath(), thePe.mAn.analysis_id);
+			CompletableFuture<String> mergeFuture = AsyncDownload.getDatatableMSC(mergeFile.toPath(), thePe.mAn.analysis_id);
+			CompletableFuture<String> dropFuture = AsyncDownload.getDatatableDC(dropFile.toPath(), thePe.mAn.analysis_id);
+			CompletableFuture<Path> batchFuture = AsyncDownload.getBatchesTSV(batchFile.toPath(), thePe.mSu.study_id);
+			CompletableFuture<Path> metaFuture = AsyncDownload.streamTsv(metaFile.toPath(), mmu, thePe.mAn.analysis_id);
+			AsyncDownload.awaitAll(rawFuture, mergeFuture, dropFuture, batchFuture, metaFuture);
 			String rawGood = null;
-			try(OutputStream out = java.nio.file.Files.newOutputStream(rawFile.toPath(), options))
+			try
 			{
-				rawGood = DatatableUtil.getDatatableRaw(out, thePe.mAn.analysis_id);
+				rawGood = AsyncDownload.join(rawFuture);
 			}
 			finally
 			{
 				postDownload(rawGood, rawFile, rawUrl, theTimestamp, options);
 			}
-			File mergeFile = new File(dldDir, "merge_data.tsv");
-			File mergeUrl = new File(dldDir, "merge_url.tsv");
 			String mergeGood = null;
-			try(OutputStream out = java.nio.file.Files.newOutputStream(mergeFile.toPath(), options))
+			try
 			{
-				mergeGood = DatatableUtil.getDatatableMSC(out, thePe.mAn.analysis_id);
+				mergeGood = AsyncDownload.join(mergeFuture);
 			}
 			finally
 			{
 				postDownload(mergeGood, mergeFile, mergeUrl, theTimestamp, options);
 			}
-			File dropFile = new File(dldDir, "drop_data.tsv");
-			File dropUrl = new File(dldDir, "drop_url.tsv");
 			String dropGood = null;
-			try(OutputStream out = java.nio.file.Files.newOutputStream(dropFile.toPath(), options))
+			try
 			{
-				dropGood = DatatableUtil.getDatatableDC(out, thePe.mAn.analysis_id);
+				dropGood = AsyncDownload.join(dropFuture);
 			}
 			finally
 			{
 				postDownload(dropGood, dropFile, dropUrl, theTimestamp, options);
 			}
-			// get Batch/Factors and Metabolites
-			File batchFile = new File(dldDir, "batch_factors.tsv");
-			try(OutputStream out = java.nio.file.Files.newOutputStream(batchFile.toPath(), options))
-			{
-				FactorUtil.getBatchesTSV(out, thePe.mSu.study_id);
-			}
-			File metaFile = new File(dldDir, "metabolites.tsv");
-			try(OutputStream out = java.nio.file.Files.newOutputStream(metaFile.toPath(), options))
-			{
-				MetaboliteMapUtil mmu = new MetaboliteMapUtil(mMu, mRu, mOu);
-				mmu.streamTsv(out, thePe.mAn.analysis_id);
-			}
+			AsyncDownload.join(batchFuture);
+			AsyncDownload.join(metaFuture);
 			thePe.mStatus = M_STATUS_DOWNLOADED;
 		}
 		catch(Exception exp)
@@ -482,25 +606,8 @@ public class ProcessUtil
 		File jsonindexFile = new File(dldDir.getParentFile().getParentFile(), "index.json");
 		JsonDataset jd = thePe.getJsonDataset(true);
 		jd.writeJson(jsonindexFile);
-		// zip directory
-		File [] files = ZipData.zip(dldDir, new File(dldDir.getParentFile().getParentFile(), thePe.getZipName()), false);
-		for (File myF : files)
-		{
-			if (myF.isFile())
-			{
-				if (myF.exists())
-				{
-					myF.delete();
-				}
-			}
-			else if (myF.isDirectory())
-			{
-				if (myF.exists())
-				{
-					FileUtils.deleteQuietly(myF);
-				}
-			}
-		}
+		// zip directory, compressing entries in parallel and deleting sources as they are added
+		ZipData.zipParallel(dldDir, new File(dldDir.getParentFile().getParentFile(), thePe.getZipName()), false, true);
 		thePe.mStatus = M_STATUS_DOWNLOADED;
 	}
 	
@@ -509,68 +616,18 @@ public class ProcessUtil
 	{
 		OpenOption[] options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
 		boolean wrote = false;
-		String row_type = null; // link outs
 		String col_type = "bio.metabolite.MW.name"; // bio.metabolite.MW.name
-		String metaboliteIdCol = null;
-		ArrayList<String> headerOrder = new ArrayList<>();
-		// read theMetaboliteMapFileIn for row_type (link out types), metaboliteIdCol, and headers for new complex feature label
-		try(BufferedReader br = java.nio.file.Files.newBufferedReader(theMetaboliteMapFileIn.toPath(), Charset.availableCharsets().get("UTF-8")))
-		{
-			// headers
-			String line = br.readLine();
-			int linkType = -1;
-			int headerName = -1;
-			{
-				ArrayList<String> headers = new ArrayList<>();
-				headers.addAll(Arrays.asList(line.split("\t", -1)));
-				linkType = headers.indexOf("link_type");
-				headerName = headers.indexOf("header_name");
-			}
-			// first summary line
-			line = br.readLine();
-			while(null!=line)
-			{
-				String [] splitted = line.split("\t", -1);
-				String linkTypeVal = splitted[linkType];
-				String headerNameVal = splitted[headerName];
-				if (null==row_type)
-				{
-					row_type = linkTypeVal;
-					metaboliteIdCol = headerNameVal;
-				}
-				else
-				{
-					row_type = row_type + ".|." + linkTypeVal;
-					headerOrder.add(headerNameVal);
-				}
-				line = br.readLine();
-			}
-		}
+		// theMetaboliteMapFileIn has row_type (link out types), metaboliteIdCol, and headers for new complex feature label
+		// parsed once and shared across conversions
+		LinkOutMap linkOutMap = LinkOutMap.getLinkOutMap(theMetaboliteMapFileIn);
 		// write theRowColTypeFileOut
 		try(BufferedWriter bw = java.nio.file.Files.newBufferedWriter(theRowColTypeFileOut.toPath(), Charset.availableCharsets().get("UTF-8"), options))
 		{
-			bw.write(row_type);
+			bw.write(linkOutMap.getRowType());
 			bw.newLine();
 			bw.write(col_type);
 			bw.newLine();
 		}
-		// read theMatrixFileIn for list of metabolites (features)
-		TreeSet<String> features = new TreeSet<>();
-		try(BufferedReader br = java.nio.file.Files.newBufferedReader(theMetaboliteMapFileIn.toPath(), Charset.availableCharsets().get("UTF-8")))
-		{
-			// skip headers
-			String line = br.readLine();
-			line = br.readLine();
-			while(null!=line)
-			{
-				String [] splitted = line.split("\t", -1);
-				if (splitted.length>1)
-				{
-					features.add(splitted[0]);
-				}
-				line = br.readLine();
-			}
-		}
 		// for each feature, get complex mapping string for linkouts
 		try(BufferedWriter bw = java.nio.file.Files.newBufferedWriter(theNgchmLinkMapFileOut.toPath(), Charset.availableCharsets().get("UTF-8"), options))
 		{
@@ -578,31 +635,22 @@ public class ProcessUtil
 			bw.newLine();
 			try(BufferedReader br = java.nio.file.Files.newBufferedReader(theMetabolitesFileIn.toPath(), Charset.availableCharsets().get("UTF-8")))
 			{
-				// headers
+				// headers -- resolve column indexes once
 				String line = br.readLine();
-				HashMap<String, Integer> headerToIndex = new HashMap<>();
-				{
-					ArrayList<String> headers = new ArrayList<>();
-					headers.addAll(Arrays.asList(line.split("\t", -1)));
-					headerToIndex.put(metaboliteIdCol, headers.indexOf(metaboliteIdCol));
-					for (String headerCol : headerOrder)
-					{
-						headerToIndex.put(headerCol, headers.indexOf(headerCol));
-					}
-				}
+				int [] projection = linkOutMap.getProjection(line.split("\t", -1));
 				// first summary line
 				line = br.readLine();
 				while(null!=line)
 				{
 					String [] splitted = line.split("\t", -1);
 					// feature
-					bw.write(splitted[headerToIndex.get(metaboliteIdCol)]);
+					bw.write(splitted[projection[0]]);
 					bw.write("\t");
-					bw.write(splitted[headerToIndex.get(metaboliteIdCol)]);
-					for (String headerCol : headerOrder)
+					bw.write(splitted[projection[0]]);
+					for (int index=1; index<projection.length; index++)
 					{
 						bw.write("|");
-						bw.write(splitted[headerToIndex.get(headerCol)]);
+						bw.write(splitted[projection[index]]);
 					}
 					bw.newLine();
 					line = br.readLine();
@@ -615,6 +663,9 @@ public class ProcessUtil
 
 	public void updateStandardizedIndex() throws Exception
 	{
+		// read the index once, and collect entries not yet in it
+		TreeSet<String> indexed = StdMwDownload.M_QUERY_INDEX.getIndexedPaths();
+		ArrayList<ProcessEntry> pending = new ArrayList<>();
 		int cnt = 0;
 		for (ProcessEntry pe : mHashToProcessEntries.values())
 		{
@@ -627,12 +678,13 @@ public class ProcessUtil
 				// M_QUERY_INDEX
 				File dldDir = getZipPath(pe);
 				File zipFile = new File(dldDir, pe.getZipName());
-				if (!StdMwDownload.M_QUERY_INDEX.hasEntry(zipFile))
+				if (!indexed.contains(zipFile.getAbsolutePath()))
 				{
 					if (zipFile.exists())
 					{
-						JsonDataset jd = pe.getJsonDataset(true);
-						StdMwDownload.M_QUERY_INDEX.updateIndex(zipFile, pe.mHash, jd);
+						// versions with unchanged content share a ZIP
+						indexed.add(zipFile.getAbsolutePath());
+						pending.add(pe);
 					}
 					else
 					{
@@ -648,6 +700,22 @@ public class ProcessUtil
 			}
 		}
 		System.out.println(".");
+		// list ZIP contents in parallel, then add all rows and write index once
+		StdMwDownload.printLn("updateStandardizedIndex - list " + pending.size() + " ZIP files");
+		List<DataArchive> rows = pending.parallelStream().map(pe ->
+		{
+			File zipFile = new File(getZipPath(pe), pe.getZipName());
+			try
+			{
+				return DataIndex.buildArchive(zipFile, pe.mHash, pe.getJsonDataset(true));
+			}
+			catch (IOException exp)
+			{
+				throw new UncheckedIOException("Unable to list ZIP " + zipFile.getAbsolutePath(), exp);
+			}
+		}).collect(Collectors.toList());
+		int added = StdMwDownload.M_QUERY_INDEX.updateIndexBatch(rows);
+		StdMwDownload.printLn("updateStandardizedIndex - added " + added + " entries to index");
 	}
 	
 	public boolean doesThisExist(MwTable theMt)
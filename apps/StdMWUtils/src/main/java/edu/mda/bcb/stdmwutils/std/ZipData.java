@@ -18,8 +18,27 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -33,10 +52,15 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 public class ZipData
 {
 
+	/**
+	 * With theRemovePathsFlag, only the files in theDir are added, by name.
+	 * Otherwise everything under theDir's grandparent is added with paths
+	 * relative to it.
+	 */
 	static public File[] zip(File theDir, File theZipFile, boolean theRemovePathsFlag) throws FileNotFoundException, IOException
 	{
 		// first collect contents to add (to prevent ZIP being self-referential
-		File parent = theDir.getParentFile().getParentFile();
+		File parent = getZipRoot(theDir, theRemovePathsFlag);
 		Collection<File> cf = FileUtils.listFilesAndDirs(parent, TrueFileFilter.TRUE, TrueFileFilter.TRUE);
 		cf.remove(parent);
 		File[] dirList = cf.toArray(File[]::new);
@@ -56,9 +80,9 @@ public class ZipData
 					else
 					{
 						zipName = zipName.replace(parent.getAbsolutePath(), "");
+						// remove leading slash
+						zipName = zipName.substring(1);
 					}
-					// remove leading slash
-					zipName = zipName.substring(1);
 					zos.putNextEntry(new ZipEntry(zipName));
 					try (FileInputStream fis = new FileInputStream(myFile))
 					{
@@ -72,7 +96,7 @@ public class ZipData
 						zos.closeEntry();
 					}
 				}
-				else
+				else if (!theRemovePathsFlag)
 				{
 					String zipName = myFile.getAbsolutePath();
 					zipName = zipName.replace(parent.getAbsolutePath(), "");
@@ -90,6 +114,310 @@ public class ZipData
 		return dirList;
 	}
 
+	/**
+	 * Directory whose contents zip and zipParallel add.
+	 */
+	static private File getZipRoot(File theDir, boolean theRemovePathsFlag)
+	{
+		// flat names only come from theDir, siblings would collide and be deleted by the caller
+		return theRemovePathsFlag ? theDir : theDir.getParentFile().getParentFile();
+	}
+
+	// number of threads compressing entries in zipParallel
+	static public int M_ZIP_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+	static public int M_ZIP_BUFFER = 256 * 1024;
+	// sizes at or above this need ZIP64, which zipParallel does not write
+	static final private long M_ZIP32_LIMIT = 0xFFFFFFFFL;
+
+	static private class DeflatedEntry
+	{
+		public File mSource = null;
+		public String mName = null;
+		public boolean mDirectory = false;
+		public long mCrc = 0;
+		public long mSize = 0;
+		public long mCompressedSize = 0;
+		public long mDosTime = 0;
+		public long mOffset = 0;
+		public File mSpill = null;
+	}
+
+	/**
+	 * Same archive contents as zip, but entries are compressed concurrently
+	 * (to temporary files next to theZipFile) and written in order by one
+	 * writer. If theDeleteSourcesFlag is true, sources are deleted only
+	 * after the finished archive has been moved into place, so a failed
+	 * write keeps the data. Falls back to zip if the archive would need ZIP64.
+	 *
+	 * @param theDir versioned data directory, its grandparent is zipped (theDir itself with theRemovePathsFlag)
+	 * @param theZipFile ZIP to write
+	 * @param theRemovePathsFlag use file names only, not relative paths, and no directory entries
+	 * @param theDeleteSourcesFlag delete sources after adding them
+	 * @return files and directories added to ZIP
+	 * @throws IOException
+	 */
+	static public File[] zipParallel(File theDir, File theZipFile, boolean theRemovePathsFlag, boolean theDeleteSourcesFlag) throws IOException
+	{
+		// first collect contents to add (to prevent ZIP being self-referential
+		File parent = getZipRoot(theDir, theRemovePathsFlag);
+		Collection<File> cf = FileUtils.listFilesAndDirs(parent, TrueFileFilter.TRUE, TrueFileFilter.TRUE);
+		cf.remove(parent);
+		cf.remove(theZipFile);
+		File[] dirList = cf.toArray(File[]::new);
+		long total = 0;
+		for (File myFile : dirList)
+		{
+			total += myFile.length();
+		}
+		if ((total>=M_ZIP32_LIMIT)||(dirList.length>=0xFFFF))
+		{
+			StdMwDownload.printLn("ZipData::zipParallel - large archive, use zip " + theZipFile.getAbsolutePath());
+			File[] zipped = zip(theDir, theZipFile, theRemovePathsFlag);
+			if (theDeleteSourcesFlag)
+			{
+				deleteSources(dirList);
+			}
+			return zipped;
+		}
+		ArrayList<DeflatedEntry> entries = new ArrayList<>();
+		for (File myFile : dirList)
+		{
+			if ((theRemovePathsFlag)&&(myFile.isDirectory()))
+			{
+				// flat archive, as in zip
+				continue;
+			}
+			DeflatedEntry de = new DeflatedEntry();
+			de.mSource = myFile;
+			de.mDirectory = myFile.isDirectory();
+			String zipName = myFile.getAbsolutePath();
+			if (theRemovePathsFlag)
+			{
+				zipName = myFile.getName();
+			}
+			else
+			{
+				zipName = zipName.replace(parent.getAbsolutePath(), "");
+				// remove leading slash
+				zipName = zipName.substring(1);
+			}
+			if ((de.mDirectory)&&(!zipName.endsWith("/")))
+			{
+				zipName = zipName + "/";
+			}
+			de.mName = zipName;
+			de.mDosTime = javaToDosTime(myFile.lastModified());
+			entries.add(de);
+		}
+		File partFile = new File(theZipFile.getParentFile(), theZipFile.getName() + ".part");
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(M_ZIP_THREADS, Math.max(1, entries.size())));
+		try
+		{
+			ArrayList<Future<DeflatedEntry>> futures = new ArrayList<>();
+			for (DeflatedEntry de : entries)
+			{
+				futures.add(pool.submit(() -> deflateEntry(de, theZipFile.getParentFile())));
+			}
+			try (FileOutputStream fos = new FileOutputStream(partFile);
+					FileChannel out = fos.getChannel())
+			{
+				for (Future<DeflatedEntry> future : futures)
+				{
+					DeflatedEntry de = getDeflated(future);
+					de.mOffset = out.position();
+					writeFully(out, localHeader(de));
+					if (null!=de.mSpill)
+					{
+						try (FileChannel in = FileChannel.open(de.mSpill.toPath(), StandardOpenOption.READ))
+						{
+							long position = 0;
+							while (position<de.mCompressedSize)
+							{
+								position += in.transferTo(position, de.mCompressedSize - position, out);
+							}
+						}
+						de.mSpill.delete();
+					}
+				}
+				long centralStart = out.position();
+				for (DeflatedEntry de : entries)
+				{
+					writeFully(out, centralHeader(de));
+				}
+				long centralSize = out.position() - centralStart;
+				writeFully(out, endOfCentral(entries.size(), centralSize, centralStart));
+			}
+		}
+		catch (IOException | RuntimeException exp)
+		{
+			partFile.delete();
+			throw exp;
+		}
+		finally
+		{
+			pool.shutdownNow();
+			for (DeflatedEntry de : entries)
+			{
+				if ((null!=de.mSpill)&&(de.mSpill.exists()))
+				{
+					de.mSpill.delete();
+				}
+			}
+		}
+		Files.move(partFile.toPath(), theZipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		// sources are only removed once the archive is in place
+		if (theDeleteSourcesFlag)
+		{
+			deleteSources(dirList);
+		}
+		return dirList;
+	}
+
+	static private void deleteSources(File [] theDirList)
+	{
+		for (File myF : theDirList)
+		{
+			if (myF.exists())
+			{
+				FileUtils.deleteQuietly(myF);
+			}
+		}
+	}
+
+	static private DeflatedEntry getDeflated(Future<DeflatedEntry> theFuture) throws IOException
+	{
+		try
+		{
+			return theFuture.get();
+		}
+		catch (InterruptedException exp)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing ZIP entry", exp);
+		}
+		catch (ExecutionException exp)
+		{
+			if (exp.getCause() instanceof IOException)
+			{
+				throw (IOException)exp.getCause();
+			}
+			throw new IOException("Error compressing ZIP entry", exp.getCause());
+		}
+	}
+
+	static private DeflatedEntry deflateEntry(DeflatedEntry theEntry, File theSpillDir) throws IOException
+	{
+		if (!theEntry.mDirectory)
+		{
+			theEntry.mSpill = File.createTempFile("zip", ".deflate", theSpillDir);
+			CRC32 crc = new CRC32();
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try (InputStream is = new FileInputStream(theEntry.mSource);
+					FileOutputStream fos = new FileOutputStream(theEntry.mSpill);
+					DeflaterOutputStream dos = new DeflaterOutputStream(new BufferedOutputStream(fos, M_ZIP_BUFFER), deflater, M_ZIP_BUFFER))
+			{
+				byte[] buffer = new byte[M_ZIP_BUFFER];
+				for (int bytesRead; (bytesRead = is.read(buffer)) >= 0;)
+				{
+					crc.update(buffer, 0, bytesRead);
+					dos.write(buffer, 0, bytesRead);
+				}
+				dos.finish();
+				theEntry.mSize = deflater.getBytesRead();
+				theEntry.mCompressedSize = deflater.getBytesWritten();
+			}
+			finally
+			{
+				deflater.end();
+			}
+			theEntry.mCrc = crc.getValue();
+		}
+		return theEntry;
+	}
+
+	static private void writeFully(FileChannel theOut, ByteBuffer theBuffer) throws IOException
+	{
+		theBuffer.flip();
+		while (theBuffer.hasRemaining())
+		{
+			theOut.write(theBuffer);
+		}
+	}
+
+	// general purpose flag: names are UTF-8
+	static final private int M_FLAG_UTF8 = 0x0800;
+
+	static private ByteBuffer localHeader(DeflatedEntry theEntry)
+	{
+		byte [] name = theEntry.mName.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer bb = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt(0x04034b50);
+		bb.putShort((short)20);
+		bb.putShort((short)M_FLAG_UTF8);
+		bb.putShort((short)(theEntry.mDirectory ? ZipEntry.STORED : ZipEntry.DEFLATED));
+		bb.putInt((int)theEntry.mDosTime);
+		bb.putInt((int)theEntry.mCrc);
+		bb.putInt((int)theEntry.mCompressedSize);
+		bb.putInt((int)theEntry.mSize);
+		bb.putShort((short)name.length);
+		bb.putShort((short)0);
+		bb.put(name);
+		return bb;
+	}
+
+	static private ByteBuffer centralHeader(DeflatedEntry theEntry)
+	{
+		byte [] name = theEntry.mName.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer bb = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt(0x02014b50);
+		bb.putShort((short)20);
+		bb.putShort((short)20);
+		bb.putShort((short)M_FLAG_UTF8);
+		bb.putShort((short)(theEntry.mDirectory ? ZipEntry.STORED : ZipEntry.DEFLATED));
+		bb.putInt((int)theEntry.mDosTime);
+		bb.putInt((int)theEntry.mCrc);
+		bb.putInt((int)theEntry.mCompressedSize);
+		bb.putInt((int)theEntry.mSize);
+		bb.putShort((short)name.length);
+		// extra, comment, disk number, internal attributes
+		bb.putShort((short)0);
+		bb.putShort((short)0);
+		bb.putShort((short)0);
+		bb.putShort((short)0);
+		// external attributes, MS-DOS directory flag
+		bb.putInt(theEntry.mDirectory ? 0x10 : 0);
+		bb.putInt((int)theEntry.mOffset);
+		bb.put(name);
+		return bb;
+	}
+
+	static private ByteBuffer endOfCentral(int theCount, long theCentralSize, long theCentralStart)
+	{
+		ByteBuffer bb = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt(0x06054b50);
+		bb.putShort((short)0);
+		bb.putShort((short)0);
+		bb.putShort((short)theCount);
+		bb.putShort((short)theCount);
+		bb.putInt((int)theCentralSize);
+		bb.putInt((int)theCentralStart);
+		bb.putShort((short)0);
+		return bb;
+	}
+
+	static private long javaToDosTime(long theMillis)
+	{
+		LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(theMillis), ZoneId.systemDefault());
+		int year = ldt.getYear();
+		if (year<1980)
+		{
+			// earliest DOS date, 1980-01-01
+			return (1 << 21) | (1 << 16);
+		}
+		return ((year - 1980) << 25) | (ldt.getMonthValue() << 21) | (ldt.getDayOfMonth() << 16) |
+				(ldt.getHour() << 11) | (ldt.getMinute() << 5) | (ldt.getSecond() >> 1);
+	}
+
 	static public TreeSet<String> getListOfFiles(File theZipFile) throws FileNotFoundException, IOException
 	{
 		TreeSet<String> myFiles = new TreeSet<>();
@@ -13,9 +13,6 @@ package edu.mda.bcb.stdmwutils.utils;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import edu.mda.bcb.stdmwutils.DataMap;
 import edu.mda.bcb.stdmwutils.StdMwDownload;
 import edu.mda.bcb.stdmwutils.StdMwException;
@@ -30,7 +27,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.OpenOption;
@@ -38,7 +34,6 @@ import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -61,10 +56,7 @@ public class AnalysisUtil
 		}
 		else
 		{
-			for (Summary sum : theSU.getAll())
-			{
-				au.fetchAnalyses(sum.hash, sum.study_id);
-			}
+			ParallelFetch.fetchAll("fetchAnalyses", theSU.getAll(), sum -> au.fetchAnalyses(sum.hash, sum.study_id));
 		}
 		if (theWrite)
 		{
@@ -118,79 +110,50 @@ public class AnalysisUtil
 		return mDataMap.getAll();
 	}
 	
-	public void fetchAnalyses(String theStudyHash, String theStudyId) throws MalformedURLException, IOException, NoSuchAlgorithmException
+	public void fetchAnalyses(String theStudyHash, String theStudyId) throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
 	{
 		String url = MWUrls.getAnalyses(theStudyId);
 		StdMwDownload.printLn("fetchAnalyses - connecting to " + url);
-		try (InputStream is = new URL(url).openStream(); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
+		try (InputStream is = ResponseCache.openStream(url); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
 		{
-			GsonBuilder builder = new GsonBuilder();
-			Gson gson = builder.create();
-			//gson.DisplayRun dr = gson.fromJson(jr, DisplayRun.class);
-			StdMwDownload.printLn("fetchAnalyses - call parse reader");
-			JsonElement jEle = JsonParser.parseReader(reader);
-			if (jEle.isJsonObject())
+			StdMwDownload.printLn("fetchAnalyses - stream analysis");
+			int count = MWJson.streamObjects(reader, Analysis.class, "1", analysis ->
 			{
-				JsonObject jObj = jEle.getAsJsonObject();
-				// TODO: jObj.has("1") is a clunky way to detect if we got a single object or an array, but I haven't found an alternative
-				if (true==jObj.has("1"))
+				analysis.init(theStudyHash);
+				try
 				{
-					StdMwDownload.printLn("fetchAnalyses - iterate analysis");
-					for (Map.Entry<String, JsonElement> entry : jObj.entrySet())
-					{
-						JsonObject sumObj = entry.getValue().getAsJsonObject();
-						Analysis analysis = gson.fromJson(sumObj, Analysis.class);
-						analysis.init(theStudyHash);
-						try
-						{
-							mDataMap.put(analysis.hash, analysis);
-							TreeSet<Analysis> ts = mStudyHashToMap.get(analysis.study_hash);
-							if (null==ts)
-							{
-								ts = new TreeSet<>();
-							}
-							ts.add(analysis);
-							mStudyHashToMap.put(analysis.study_hash, ts);
-						}
-						catch(Exception exp)
-						{
-							// duplicate analysis is weird, but acceptible
-							StdMwDownload.printWarn("Duplicate analysis " + analysis.analysis_id + " for " + analysis.study_id);
-						}
-					}
+					addAnalysis(analysis);
 				}
-				else
+				catch(StdMwException exp)
 				{
-					StdMwDownload.printLn("fetchAnalyses - single analysis");
-					JsonObject sumObj = jEle.getAsJsonObject();
-					Analysis analysis = gson.fromJson(sumObj, Analysis.class);
-					analysis.init(theStudyHash);
-					try
-					{
-						mDataMap.put(analysis.hash, analysis);
-						TreeSet<Analysis> ts = mStudyHashToMap.get(analysis.study_hash);
-						if (null==ts)
-						{
-							ts = new TreeSet<>();
-						}
-						ts.add(analysis);
-						mStudyHashToMap.put(analysis.study_hash, ts);
-					}
-					catch(StdMwException exp)
-					{
-						// duplicate analysis is weird, but acceptible
-						StdMwDownload.printWarn("Duplicate analysis " + analysis.analysis_id + " for " + analysis.study_id);
-					}
+					// duplicate analysis is weird, but acceptible
+					StdMwDownload.printWarn("Duplicate analysis " + analysis.analysis_id + " for " + analysis.study_id);
 				}
-				StdMwDownload.printLn("fetchAnalyses - finished iterating");
+			});
+			if (count<0)
+			{
+				StdMwDownload.printLn("fetchAnalyses - no analysis");
 			}
 			else
 			{
-				StdMwDownload.printLn("fetchAnalyses - no analysis");
+				StdMwDownload.printLn("fetchAnalyses - finished iterating");
 			}
 		}
 	}
 	
+	// synchronized, as fetchAnalyses may be called concurrently
+	synchronized private void addAnalysis(Analysis theAnalysis) throws StdMwException
+	{
+		mDataMap.put(theAnalysis.hash, theAnalysis);
+		TreeSet<Analysis> ts = mStudyHashToMap.get(theAnalysis.study_hash);
+		if (null==ts)
+		{
+			ts = new TreeSet<>();
+		}
+		ts.add(theAnalysis);
+		mStudyHashToMap.put(theAnalysis.study_hash, ts);
+	}
+	
 	public void writeAnalyses(File theDir) throws IOException
 	{
 		if (mDataMap.size()>0)
@@ -0,0 +1,180 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Non-blocking versions of the DatatableUtil, FactorUtil and
+ * MetaboliteMapUtil stream calls. Each writes to a file on a shared
+ * executor, so the datatable, factor and metabolite requests for one
+ * analysis can be in flight at the same time.
+ *
+ * @author Tod-Casasent
+ */
+public class AsyncDownload
+{
+	static public int M_THREADS = 16;
+
+	static private ExecutorService M_POOL = null;
+
+	/**
+	 * Blocking call that writes to theOut, returning a result (such as
+	 * the DatatableUtil URL string).
+	 */
+	@FunctionalInterface
+	public interface StreamWriter<T>
+	{
+		T write(OutputStream theOut) throws IOException, NoSuchAlgorithmException, StdMwException;
+	}
+
+	synchronized static private ExecutorService getPool()
+	{
+		if (null==M_POOL)
+		{
+			// daemon threads so an abandoned download does not hold up exit
+			M_POOL = Executors.newFixedThreadPool(M_THREADS, theRunnable ->
+			{
+				Thread thread = new Thread(theRunnable, "AsyncDownload");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return M_POOL;
+	}
+
+	/**
+	 * Open theFile (create or truncate) and run theWriter on it using the
+	 * shared executor.
+	 *
+	 * @param theFile file to write
+	 * @param theWriter blocking call to make
+	 * @return future result of theWriter
+	 */
+	static public <T> CompletableFuture<T> toFile(Path theFile, StreamWriter<T> theWriter)
+	{
+		return CompletableFuture.supplyAsync(() ->
+		{
+			OpenOption[] options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
+			try (OutputStream out = Files.newOutputStream(theFile, options))
+			{
+				return theWriter.write(out);
+			}
+			catch (IOException | NoSuchAlgorithmException | StdMwException exp)
+			{
+				throw new CompletionException(exp);
+			}
+		}, getPool());
+	}
+
+	/**
+	 * @return future URL used, or null if the datatable could not be downloaded
+	 */
+	static public CompletableFuture<String> getDatatableRaw(Path theFile, String theAnalysisId)
+	{
+		return toFile(theFile, out -> DatatableUtil.getDatatableRaw(out, theAnalysisId));
+	}
+
+	/**
+	 * @return future URL used, or null if the datatable could not be downloaded
+	 */
+	static public CompletableFuture<String> getDatatableMSC(Path theFile, String theAnalysisId)
+	{
+		return toFile(theFile, out -> DatatableUtil.getDatatableMSC(out, theAnalysisId));
+	}
+
+	/**
+	 * @return future URL used, or null if the datatable could not be downloaded
+	 */
+	static public CompletableFuture<String> getDatatableDC(Path theFile, String theAnalysisId)
+	{
+		return toFile(theFile, out -> DatatableUtil.getDatatableDC(out, theAnalysisId));
+	}
+
+	/**
+	 * @return future theFile, once written
+	 */
+	static public CompletableFuture<Path> getBatchesTSV(Path theFile, String theStudyId)
+	{
+		return toFile(theFile, out ->
+		{
+			FactorUtil.getBatchesTSV(out, theStudyId);
+			return theFile;
+		});
+	}
+
+	/**
+	 * @return future theFile, once written
+	 */
+	static public CompletableFuture<Path> streamTsv(Path theFile, MetaboliteMapUtil theMMU, String theAnalysisId)
+	{
+		return toFile(theFile, out ->
+		{
+			theMMU.streamTsv(out, theAnalysisId);
+			return theFile;
+		});
+	}
+
+	/**
+	 * Wait for all of theFutures to finish, whether or not they fail,
+	 * so files are not still being written when the caller cleans up.
+	 */
+	static public void awaitAll(CompletableFuture<?>... theFutures)
+	{
+		try
+		{
+			CompletableFuture.allOf(theFutures).join();
+		}
+		catch (CompletionException exp)
+		{
+			// failures are reported by join on the individual future
+		}
+	}
+
+	/**
+	 * Result of theFuture, rethrowing the exception from the writer.
+	 */
+	static public <T> T join(CompletableFuture<T> theFuture) throws IOException, NoSuchAlgorithmException, StdMwException
+	{
+		try
+		{
+			return theFuture.join();
+		}
+		catch (CompletionException exp)
+		{
+			Throwable cause = exp.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException)cause;
+			}
+			if (cause instanceof NoSuchAlgorithmException)
+			{
+				throw (NoSuchAlgorithmException)cause;
+			}
+			if (cause instanceof StdMwException)
+			{
+				throw (StdMwException)cause;
+			}
+			throw exp;
+		}
+	}
+}
@@ -0,0 +1,359 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Cache of MW datatables (the text from MWUrls.getDatatable) by analysis
+ * id, so the Raw, MSC and DC servlets and ZipConversion share one
+ * download per analysis.
+ *
+ * Downloads land in a disk tier (M_DISK_DIR in M_MWB_TEMP), least
+ * recently used first out once the total passes M_MAX_DISK_BYTES.
+ * Datatables up to M_MAX_ENTRY_BYTES are also kept in memory, least
+ * recently used first out once the total passes M_MAX_BYTES. Entries
+ * older than M_TTL_MS are deleted and downloaded again. Concurrent
+ * requests for the same analysis wait for a single download. clear()
+ * drops everything, and is called when Scheduled.updateUtilObjects loads
+ * new data and at the end of ProcessUtil.processPending.
+ *
+ * @author Tod-Casasent
+ */
+public class DatatableCache
+{
+	static public boolean M_ENABLED = true;
+	static public long M_MAX_BYTES = 256L * 1024L * 1024L;
+	static public long M_MAX_ENTRY_BYTES = 32L * 1024L * 1024L;
+	static public long M_MAX_DISK_BYTES = 2L * 1024L * 1024L * 1024L;
+	static public long M_TTL_MS = 60L * 60L * 1000L;
+	static public String M_DISK_DIR = "datatables";
+
+	static private class Entry
+	{
+		final byte [] mData;
+		final long mCreated;
+
+		Entry(byte [] theData, long theCreated)
+		{
+			mData = theData;
+			mCreated = theCreated;
+		}
+	}
+
+	// access order, for LRU
+	static private final LinkedHashMap<String, Entry> M_MEMORY = new LinkedHashMap<>(16, 0.75f, true);
+	static private long M_MEMORY_BYTES = 0;
+	// analysis id to file size, access order, for LRU
+	static private final LinkedHashMap<String, Long> M_DISK = new LinkedHashMap<>(16, 0.75f, true);
+	static private long M_DISK_BYTES = 0;
+	static private final ConcurrentHashMap<String, CompletableFuture<File>> M_IN_FLIGHT = new ConcurrentHashMap<>();
+	// bumped by clear, so downloads started before it are not kept
+	static private final AtomicLong M_GENERATION = new AtomicLong(0);
+
+	static private final AtomicLong M_MEMORY_HITS = new AtomicLong(0);
+	static private final AtomicLong M_DISK_HITS = new AtomicLong(0);
+	static private final AtomicLong M_DOWNLOADS = new AtomicLong(0);
+	static private final AtomicLong M_SHARED = new AtomicLong(0);
+
+	/**
+	 * Open the datatable for theAnalysisId, from memory, disk, or the
+	 * Workbench.
+	 *
+	 * @param theAnalysisId analysis id
+	 * @return datatable text, caller closes
+	 * @throws IOException if the download fails
+	 */
+	static public InputStream openDatatable(String theAnalysisId) throws IOException
+	{
+		if (!M_ENABLED)
+		{
+			return MWHttpClient.openStream(MWUrls.getDatatable(theAnalysisId));
+		}
+		byte [] data = getMemory(theAnalysisId);
+		if (null!=data)
+		{
+			M_MEMORY_HITS.incrementAndGet();
+			return new ByteArrayInputStream(data);
+		}
+		File file = getDiskFile(theAnalysisId);
+		if (isFresh(file))
+		{
+			M_DISK_HITS.incrementAndGet();
+			putDisk(theAnalysisId, file);
+		}
+		else
+		{
+			removeDisk(theAnalysisId);
+			file = download(theAnalysisId);
+		}
+		try
+		{
+			return open(theAnalysisId, file);
+		}
+		catch (NoSuchFileException exp)
+		{
+			// evicted or cleared after it was found, download again
+			return open(theAnalysisId, download(theAnalysisId));
+		}
+	}
+
+	static private InputStream open(String theAnalysisId, File theFile) throws IOException
+	{
+		if (!theFile.equals(getDiskFile(theAnalysisId)))
+		{
+			// downloaded across a clear, not cached, read once then deleted
+			return Files.newInputStream(theFile.toPath(), StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+		}
+		// keep smaller datatables in memory
+		if (theFile.length()<=M_MAX_ENTRY_BYTES)
+		{
+			byte [] data = Files.readAllBytes(theFile.toPath());
+			putMemory(theAnalysisId, data, theFile.lastModified());
+			return new ByteArrayInputStream(data);
+		}
+		return Files.newInputStream(theFile.toPath());
+	}
+
+	/**
+	 * Drop all cached datatables, in memory and on disk.
+	 */
+	static public void clear()
+	{
+		M_GENERATION.incrementAndGet();
+		synchronized(M_MEMORY)
+		{
+			M_MEMORY.clear();
+			M_MEMORY_BYTES = 0;
+		}
+		synchronized(M_DISK)
+		{
+			M_DISK.clear();
+			M_DISK_BYTES = 0;
+			FileUtils.deleteQuietly(getDiskDir());
+		}
+		StdMwDownload.printLn("DatatableCache cleared");
+	}
+
+	static private byte [] getMemory(String theAnalysisId)
+	{
+		synchronized(M_MEMORY)
+		{
+			Entry entry = M_MEMORY.get(theAnalysisId);
+			if (null==entry)
+			{
+				return null;
+			}
+			if ((System.currentTimeMillis() - entry.mCreated)>M_TTL_MS)
+			{
+				M_MEMORY.remove(theAnalysisId);
+				M_MEMORY_BYTES -= entry.mData.length;
+				return null;
+			}
+			return entry.mData;
+		}
+	}
+
+	static private void putMemory(String theAnalysisId, byte [] theData, long theCreated)
+	{
+		synchronized(M_MEMORY)
+		{
+			Entry old = M_MEMORY.put(theAnalysisId, new Entry(theData, theCreated));
+			if (null!=old)
+			{
+				M_MEMORY_BYTES -= old.mData.length;
+			}
+			M_MEMORY_BYTES += theData.length;
+			Iterator<Map.Entry<String, Entry>> iter = M_MEMORY.entrySet().iterator();
+			while ((M_MEMORY_BYTES>M_MAX_BYTES)&&(iter.hasNext()))
+			{
+				Map.Entry<String, Entry> eldest = iter.next();
+				M_MEMORY_BYTES -= eldest.getValue().mData.length;
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Record theFile as the most recently used, then delete expired files
+	 * and, least recently used first, files past M_MAX_DISK_BYTES.
+	 */
+	static private void putDisk(String theAnalysisId, File theFile)
+	{
+		synchronized(M_DISK)
+		{
+			Long old = M_DISK.put(theAnalysisId, theFile.length());
+			if (null!=old)
+			{
+				M_DISK_BYTES -= old;
+			}
+			M_DISK_BYTES += theFile.length();
+			// expired first, then least recently used while over the limit
+			for (boolean expiredPass : new boolean [] { true, false })
+			{
+				Iterator<Map.Entry<String, Long>> iter = M_DISK.entrySet().iterator();
+				while (iter.hasNext())
+				{
+					Map.Entry<String, Long> eldest = iter.next();
+					if (theAnalysisId.equals(eldest.getKey()))
+					{
+						continue;
+					}
+					File file = getDiskFile(eldest.getKey());
+					if (expiredPass ? (!isFresh(file)) : (M_DISK_BYTES>M_MAX_DISK_BYTES))
+					{
+						M_DISK_BYTES -= eldest.getValue();
+						iter.remove();
+						file.delete();
+					}
+				}
+			}
+		}
+	}
+
+	static private void removeDisk(String theAnalysisId)
+	{
+		synchronized(M_DISK)
+		{
+			Long old = M_DISK.remove(theAnalysisId);
+			if (null!=old)
+			{
+				M_DISK_BYTES -= old;
+			}
+			getDiskFile(theAnalysisId).delete();
+		}
+	}
+
+	static private File getDiskDir()
+	{
+		return new File(MWUrls.M_MWB_TEMP, M_DISK_DIR);
+	}
+
+	static private File getDiskFile(String theAnalysisId)
+	{
+		return new File(getDiskDir(), theAnalysisId.replaceAll("[^A-Za-z0-9_.-]", "_") + ".tsv");
+	}
+
+	static private boolean isFresh(File theFile)
+	{
+		return theFile.exists()&&((System.currentTimeMillis() - theFile.lastModified())<=M_TTL_MS);
+	}
+
+	/**
+	 * Download to the disk tier. If a download for theAnalysisId is
+	 * already running, wait for it instead.
+	 */
+	static private File download(String theAnalysisId) throws IOException
+	{
+		CompletableFuture<File> future = new CompletableFuture<>();
+		CompletableFuture<File> running = M_IN_FLIGHT.putIfAbsent(theAnalysisId, future);
+		if (null!=running)
+		{
+			M_SHARED.incrementAndGet();
+			try
+			{
+				return running.join();
+			}
+			catch (CompletionException exp)
+			{
+				if (exp.getCause() instanceof IOException)
+				{
+					throw (IOException)exp.getCause();
+				}
+				throw new IOException("Error downloading datatable for " + theAnalysisId, exp.getCause());
+			}
+		}
+		long generation = M_GENERATION.get();
+		try
+		{
+			M_DOWNLOADS.incrementAndGet();
+			File dir = getDiskDir();
+			dir.mkdirs();
+			File tmpFile = File.createTempFile("datatable", ".tmp", dir);
+			try
+			{
+				try (InputStream is = MWHttpClient.openStream(MWUrls.getDatatable(theAnalysisId)))
+				{
+					Files.copy(is, tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				File file = getDiskFile(theAnalysisId);
+				if (generation==M_GENERATION.get())
+				{
+					Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					putDisk(theAnalysisId, file);
+				}
+				else
+				{
+					// cleared while downloading, use this copy once, open deletes it on close
+					file = tmpFile;
+				}
+				future.complete(file);
+				return file;
+			}
+			finally
+			{
+				if ((tmpFile.exists())&&(!future.isDone()))
+				{
+					tmpFile.delete();
+				}
+			}
+		}
+		catch (IOException | RuntimeException exp)
+		{
+			future.completeExceptionally(exp);
+			throw exp;
+		}
+		finally
+		{
+			M_IN_FLIGHT.remove(theAnalysisId, future);
+		}
+	}
+
+	static public void printStats()
+	{
+		long memoryBytes = 0;
+		int memoryEntries = 0;
+		synchronized(M_MEMORY)
+		{
+			memoryBytes = M_MEMORY_BYTES;
+			memoryEntries = M_MEMORY.size();
+		}
+		long diskBytes = 0;
+		int diskEntries = 0;
+		synchronized(M_DISK)
+		{
+			diskBytes = M_DISK_BYTES;
+			diskEntries = M_DISK.size();
+		}
+		StdMwDownload.printLn("DatatableCache memory_hits=" + M_MEMORY_HITS.get() + " disk_hits=" + M_DISK_HITS.get()
+				+ " downloads=" + M_DOWNLOADS.get() + " shared_downloads=" + M_SHARED.get()
+				+ " memory_entries=" + memoryEntries + " memory_bytes=" + memoryBytes
+				+ " disk_entries=" + diskEntries + " disk_bytes=" + diskBytes);
+	}
+}
@@ -11,9 +11,6 @@
 
 package edu.mda.bcb.stdmwutils.utils;
 
-import com.google.common.collect.ArrayTable;
-import com.google.common.collect.Table;
-import com.google.common.collect.Tables;
 import edu.mda.bcb.stdmwutils.StdMwDownload;
 import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
 import java.io.IOException;
@@ -22,9 +19,8 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.List;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -36,11 +32,14 @@ import org.apache.commons.fileupload.util.Streams;
  */
 public class DatatableUtil
 {
+	// parse DC and MSC values as doubles (missing as NA) and log missingness, rather than copy text
+	static public boolean M_NUMERIC = false;
+
 	static public String getDatatableRaw(OutputStream theOut, String theAnalysisId) throws MalformedURLException, IOException
 	{
 		String success = null;
 		String url = MWUrls.getDatatable(theAnalysisId);
-		try (InputStream is = new URL(url).openStream())
+		try (InputStream is = DatatableCache.openDatatable(theAnalysisId))
 		{
 			Streams.copy(is, theOut, true);
 			success = url;
@@ -52,17 +51,43 @@ public class DatatableUtil
 		return success;
 	}
 
+	static private void logNumericStats(StreamingTranspose theTranspose, String theAnalysisId)
+	{
+		if (theTranspose.isNumeric())
+		{
+			long cells = (long)theTranspose.getFeatureCount() * theTranspose.getSampleCount();
+			double min = Double.NaN;
+			double max = Double.NaN;
+			int allMissing = 0;
+			for (int index = 0; index < theTranspose.getFeatureCount(); index++)
+			{
+				if (theTranspose.getMissing(index)==theTranspose.getSampleCount())
+				{
+					allMissing += 1;
+				}
+				else
+				{
+					min = Double.isNaN(min) ? theTranspose.getMin(index) : Math.min(min, theTranspose.getMin(index));
+					max = Double.isNaN(max) ? theTranspose.getMax(index) : Math.max(max, theTranspose.getMax(index));
+				}
+			}
+			StdMwDownload.printLn("Datatable " + theAnalysisId + " features=" + theTranspose.getFeatureCount()
+					+ " samples=" + theTranspose.getSampleCount() + " missing=" + theTranspose.getMissingTotal() + "/" + cells
+					+ " non_numeric=" + theTranspose.getNonNumeric() + " all_missing_features=" + allMissing
+					+ " min=" + min + " max=" + max);
+		}
+	}
+
 	static public String getDatatableDC(OutputStream theOut, String theAnalysisId) throws MalformedURLException, IOException
 	{
 		String success = null;
 		String url = MWUrls.getDatatable(theAnalysisId);
-		try (InputStream is = new URL(url).openStream())
+		try (InputStream is = DatatableCache.openDatatable(theAnalysisId))
 		{
-			try (Reader reader = new InputStreamReader(is))
+			try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
 			{
 				CSVFormat format = CSVFormat.DEFAULT.builder().setDelimiter('\t').setHeader().build();
 				CSVParser parser = new CSVParser(reader, format);
-				List<CSVRecord> memlist = parser.getRecords();
 				// column headers are all headers except first
 				// features
 				ArrayList<String> columns = new ArrayList<>();
@@ -78,40 +103,15 @@ public class DatatableUtil
 				{
 					// row headers are first value from each row entry
 					// samples
-					ArrayList<String> rows = new ArrayList<>();
-					for (CSVRecord csvRecord : memlist)
-					{
-						rows.add(csvRecord.get("Samples"));
-					}
-					// setup table
-					Table<String, String, String> dataTable = ArrayTable.create(rows, columns);
-					for (CSVRecord csvRecord : memlist)
+					// records are read once, and transposed to features as rows
+					try (StreamingTranspose transpose = new StreamingTranspose(parser.getHeaderNames(), columns, M_NUMERIC))
 					{
-						String myRow = csvRecord.get(0);
-						for (String col : columns)
+						for (CSVRecord csvRecord : parser)
 						{
-							dataTable.put(myRow, col, csvRecord.get(col));
+							transpose.addSample(csvRecord.get("Samples"), csvRecord);
 						}
-					}
-					dataTable = Tables.transpose(dataTable);
-					// write headers to theOut
-					for(String hdr : dataTable.columnKeySet())
-					{
-						theOut.write(("\t"+hdr).getBytes());
-					}
-					theOut.write("\n".getBytes());
-					theOut.flush();
-					// write each row to theOut
-					for(String row : dataTable.rowKeySet())
-					{
-						theOut.write(row.getBytes());
-						for(String col : dataTable.columnKeySet())
-						{
-							theOut.write("\t".getBytes());
-							theOut.write(dataTable.get(row, col).getBytes());
-						}
-						theOut.write("\n".getBytes());
-						theOut.flush();
+						transpose.write(theOut);
+						logNumericStats(transpose, theAnalysisId);
 					}
 					success = url;
 				}
@@ -137,13 +137,12 @@ public class DatatableUtil
 	{
 		String success = null;
 		String url = MWUrls.getDatatable(theAnalysisId);
-		try (InputStream is = new URL(url).openStream())
+		try (InputStream is = DatatableCache.openDatatable(theAnalysisId))
 		{
-			try (Reader reader = new InputStreamReader(is))
+			try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
 			{
 				CSVFormat format = CSVFormat.DEFAULT.builder().setDelimiter('\t').setHeader().build();
 				CSVParser parser = new CSVParser(reader, format);
-				List<CSVRecord> memlist = parser.getRecords();
 				// column headers are Samples, Class, and then feature names
 				// features
 				ArrayList<String> featureNames = new ArrayList<>();
@@ -160,41 +159,15 @@ public class DatatableUtil
 				{
 					// sample id and sample class are first two values from each row entry
 					// sample+class
-					ArrayList<String> sampleLabels = new ArrayList<>();
-					for (CSVRecord csvRecord : memlist)
-					{
-						sampleLabels.add(csvRecord.get("Samples") + "-" + csvRecord.get("Class"));
-					}
-					// ArrayTable.create(row-index-list-features, column-index-list-samples
-					Table<String, String, String> dataTable = ArrayTable.create(featureNames, sampleLabels);
-					for (CSVRecord csvRecord : memlist)
-					{
-						String colIndex = csvRecord.get("Samples") + "-" + csvRecord.get("Class");
-						for (String rowIndex : featureNames)
-						{
-							dataTable.put(rowIndex, colIndex, csvRecord.get(rowIndex));
-						}
-					}
-					dataTable = Tables.transpose(dataTable);
-					// write headers to theOut
-					for(String hdr : dataTable.columnKeySet())
-					{
-						theOut.write(("\t"+hdr).getBytes());
-					}
-					theOut.write("\n".getBytes());
-					theOut.flush();
-					// write each row to theOut
-					// ArrayTable.create(row-index-list-features, column-index-list-samples
-					for(String featureId : dataTable.rowKeySet())
+					// records are read once, and written with samples as rows, features as columns
+					try (StreamingTranspose transpose = new StreamingTranspose(parser.getHeaderNames(), featureNames, M_NUMERIC, true))
 					{
-						theOut.write(featureId.getBytes());
-						for(String sampleId : dataTable.columnKeySet())
+						for (CSVRecord csvRecord : parser)
 						{
-							theOut.write("\t".getBytes());
-							theOut.write(dataTable.get(featureId, sampleId).getBytes());
+							transpose.addSample(csvRecord.get("Samples") + "-" + csvRecord.get("Class"), csvRecord);
 						}
-						theOut.write("\n".getBytes());
-						theOut.flush();
+						transpose.write(theOut);
+						logNumericStats(transpose, theAnalysisId);
 					}
 					success = url;
 				}
@@ -20,22 +20,20 @@ import edu.mda.bcb.stdmwutils.StdMwDownload;
 import edu.mda.bcb.stdmwutils.StdMwException;
 import edu.mda.bcb.stdmwutils.mwdata.Analysis;
 import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
+import edu.mda.bcb.stdmwutils.std.LinkOutMap;
 import edu.mda.bcb.stdmwutils.std.ZipData;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.nio.charset.Charset;
 import java.nio.file.OpenOption;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -142,53 +140,52 @@ public class DownloadConvertSingle
 	{
 		String timestamp = StdMwDownload.getTimestamp();
 		File dldDir = getZipDir(true);
-		// download all versions of data (Raw, Drop Class, Merge Sample-Class)
+		// download all versions of data (Raw, Drop Class, Merge Sample-Class) and Batch/Factors and Metabolites at the same time
 		OpenOption[] options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
 		File rawFile = new File(dldDir, "raw_data.tsv");
 		File rawUrl = new File(dldDir, "raw_url.tsv");
+		File mergeFile = new File(dldDir, "merge_data.tsv");
+		File mergeUrl = new File(dldDir, "merge_url.tsv");
+		File dropFile = new File(dldDir, "drop_data.tsv");
+		File dropUrl = new File(dldDir, "drop_url.tsv");
+		File batchFile = new File(dldDir, "batch_factors.tsv");
+		File metaFile = new File(dldDir, "metabolites.tsv");
+		MetaboliteMapUtil mmu = MetaboliteMapUtil.getInstance(mMetaboliteUtil, mRefMetUtil, mOtherIdsUtil);
+		CompletableFuture<String> rawFuture = AsyncDownload.getDatatableRaw(rawFile.toPath(), mAnalysis.analysis_id);
+		CompletableFuture<String> mergeFuture = AsyncDownload.getDatatableMSC(mergeFile.toPath(), mAnalysis.analysis_id);
+		CompletableFuture<String> dropFuture = AsyncDownload.getDatatableDC(dropFile.toPath(), mAnalysis.analysis_id);
+		CompletableFuture<Path> batchFuture = AsyncDownload.getBatchesTSV(batchFile.toPath(), mAnalysis.study_id);
+		CompletableFuture<Path> metaFuture = AsyncDownload.streamTsv(metaFile.toPath(), mmu, mAnalysis.analysis_id);
+		AsyncDownload.awaitAll(rawFuture, mergeFuture, dropFuture, batchFuture, metaFuture);
 		String rawGood = null;
-		try(OutputStream out = java.nio.file.Files.newOutputStream(rawFile.toPath(), options))
+		try
 		{
-			rawGood = DatatableUtil.getDatatableRaw(out, mAnalysis.analysis_id);
+			rawGood = AsyncDownload.join(rawFuture);
 		}
 		finally
 		{
 			postDownload(rawGood, rawFile, rawUrl, timestamp, options);
 		}
-		File mergeFile = new File(dldDir, "merge_data.tsv");
-		File mergeUrl = new File(dldDir, "merge_url.tsv");
 		String mergeGood = null;
-		try(OutputStream out = java.nio.file.Files.newOutputStream(mergeFile.toPath(), options))
+		try
 		{
-			mergeGood = DatatableUtil.getDatatableMSC(out, mAnalysis.analysis_id);
+			mergeGood = AsyncDownload.join(mergeFuture);
 		}
 		finally
 		{
 			postDownload(mergeGood, mergeFile, mergeUrl, timestamp, options);
 		}
-		File dropFile = new File(dldDir, "drop_data.tsv");
-		File dropUrl = new File(dldDir, "drop_url.tsv");
 		String dropGood = null;
-		try(OutputStream out = java.nio.file.Files.newOutputStream(dropFile.toPath(), options))
+		try
 		{
-			dropGood = DatatableUtil.getDatatableDC(out, mAnalysis.analysis_id);
+			dropGood = AsyncDownload.join(dropFuture);
 		}
 		finally
 		{
 			postDownload(dropGood, dropFile, dropUrl, timestamp, options);
 		}
-		// get Batch/Factors and Metabolites
-		File batchFile = new File(dldDir, "batch_factors.tsv");
-		try(OutputStream out = java.nio.file.Files.newOutputStream(batchFile.toPath(), options))
-		{
-			FactorUtil.getBatchesTSV(out, mAnalysis.study_id);
-		}
-		File metaFile = new File(dldDir, "metabolites.tsv");
-		try(OutputStream out = java.nio.file.Files.newOutputStream(metaFile.toPath(), options))
-		{
-			MetaboliteMapUtil mmu = new MetaboliteMapUtil(mMetaboliteUtil, mRefMetUtil, mOtherIdsUtil);
-			mmu.streamTsv(out, mAnalysis.analysis_id);
-		}
+		AsyncDownload.join(batchFuture);
+		AsyncDownload.join(metaFuture);
 	}
 	
 	protected void convertDataOptions() throws IOException, MalformedURLException, NoSuchAlgorithmException, StdMwException, Exception
@@ -279,68 +276,18 @@ public class DownloadConvertSingle
 	{
 		OpenOption[] options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
 		boolean wrote = false;
-		String row_type = null; // link outs
 		String col_type = "bio.metabolite.MW.name"; // bio.metabolite.MW.name
-		String metaboliteIdCol = null;
-		ArrayList<String> headerOrder = new ArrayList<>();
-		// read theMetaboliteMapFileIn for row_type (link out types), metaboliteIdCol, and headers for new complex feature label
-		try(BufferedReader br = java.nio.file.Files.newBufferedReader(theMetaboliteMapFileIn.toPath(), Charset.availableCharsets().get("UTF-8")))
-		{
-			// headers
-			String line = br.readLine();
-			int linkType = -1;
-			int headerName = -1;
-			{
-				ArrayList<String> headers = new ArrayList<>();
-				headers.addAll(Arrays.asList(line.split("\t", -1)));
-				linkType = headers.indexOf("link_type");
-				headerName = headers.indexOf("header_name");
-			}
-			// first summary line
-			line = br.readLine();
-			while(null!=line)
-			{
-				String [] splitted = line.split("\t", -1);
-				String linkTypeVal = splitted[linkType];
-				String headerNameVal = splitted[headerName];
-				if (null==row_type)
-				{
-					row_type = linkTypeVal;
-					metaboliteIdCol = headerNameVal;
-				}
-				else
-				{
-					row_type = row_type + ".|." + linkTypeVal;
-					headerOrder.add(headerNameVal);
-				}
-				line = br.readLine();
-			}
-		}
+		// theMetaboliteMapFileIn has row_type (link out types), metaboliteIdCol, and headers for new complex feature label
+		// parsed once and shared across conversions
+		LinkOutMap linkOutMap = LinkOutMap.getLinkOutMap(theMetaboliteMapFileIn);
 		// write theRowColTypeFileOut
 		try(BufferedWriter bw = java.nio.file.Files.newBufferedWriter(theRowColTypeFileOut.toPath(), Charset.availableCharsets().get("UTF-8"), options))
 		{
-			bw.write(row_type);
+			bw.write(linkOutMap.getRowType());
 			bw.newLine();
 			bw.write(col_type);
 			bw.newLine();
 		}
-		// read theMatrixFileIn for list of metabolites (features)
-		TreeSet<String> features = new TreeSet<>();
-		try(BufferedReader br = java.nio.file.Files.newBufferedReader(theMetaboliteMapFileIn.toPath(), Charset.availableCharsets().get("UTF-8")))
-		{
-			// skip headers
-			String line = br.readLine();
-			line = br.readLine();
-			while(null!=line)
-			{
-				String [] splitted = line.split("\t", -1);
-				if (splitted.length>1)
-				{
-					features.add(splitted[0]);
-				}
-				line = br.readLine();
-			}
-		}
 		// for each feature, get complex mapping string for linkouts
 		try(BufferedWriter bw = java.nio.file.Files.newBufferedWriter(theNgchmLinkMapFileOut.toPath(), Charset.availableCharsets().get("UTF-8"), options))
 		{
@@ -348,27 +295,18 @@ public class DownloadConvertSingle
 			bw.newLine();
 			try(BufferedReader br = java.nio.file.Files.newBufferedReader(theMetabolitesFileIn.toPath(), Charset.availableCharsets().get("UTF-8")))
 			{
-				// headers
+				// headers -- resolve column indexes once
 				String line = br.readLine();
-				HashMap<String, Integer> headerToIndex = new HashMap<>();
-				{
-					ArrayList<String> headers = new ArrayList<>();
-					headers.addAll(Arrays.asList(line.split("\t", -1)));
-					headerToIndex.put(metaboliteIdCol, headers.indexOf(metaboliteIdCol));
-					for (String headerCol : headerOrder)
-					{
-						headerToIndex.put(headerCol, headers.indexOf(headerCol));
-					}
-				}
+				int [] projection = linkOutMap.getProjection(line.split("\t", -1));
 				// track processed feature names
-				TreeMap<String, Integer> featureToCount = new TreeMap<>();
+				HashMap<String, Integer> featureToCount = new HashMap<>();
 				// first summary line
 				line = br.readLine();
 				while(null!=line)
 				{
 					String [] splitted = line.split("\t", -1);
 					// feature
-					String featureRowLabel = splitted[headerToIndex.get(metaboliteIdCol)];
+					String featureRowLabel = splitted[projection[0]];
 					Integer count = featureToCount.get(featureRowLabel);
 					if (null==count)
 					{
@@ -386,10 +324,10 @@ public class DownloadConvertSingle
 					bw.write(featureRowLabel);
 					bw.write("\t");
 					bw.write(featureRowLabel);
-					for (String headerCol : headerOrder)
+					for (int index=1; index<projection.length; index++)
 					{
 						bw.write("|");
-						bw.write(splitted[headerToIndex.get(headerCol)]);
+						bw.write(splitted[projection[index]]);
 					}
 					bw.newLine();
 					line = br.readLine();
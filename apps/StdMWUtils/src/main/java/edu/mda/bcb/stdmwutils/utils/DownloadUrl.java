@@ -12,16 +12,30 @@
 package edu.mda.bcb.stdmwutils.utils;
 
 import edu.mda.bcb.stdmwutils.StdMwDownload;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.codec.digest.MessageDigestAlgorithms;
 import org.apache.commons.io.IOUtils;
@@ -32,6 +46,16 @@ import org.apache.commons.io.IOUtils;
  */
 public class DownloadUrl
 {
+	static public long M_BACKOFF_BASE_MS = 2000;
+	static public long M_BACKOFF_MAX_MS = 60000;
+
+	// runs download attempts, daemon threads so pending retries do not hold up exit
+	static private final ExecutorService M_DOWNLOAD_POOL = Executors.newCachedThreadPool(theRunnable ->
+	{
+		Thread thread = new Thread(theRunnable, "DownloadUrl");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	private String mUrl = null;
 	private int mRetries = -1;
@@ -43,13 +67,8 @@ public class DownloadUrl
 	private String mMD5 = null;
 	private String mParameters = null;
 	private Map<String, String> mRequestProperties = null;
-
-	synchronized static public HttpURLConnection openConnection(String theUrl) throws MalformedURLException, IOException
-	{
-		URL myURL = new URL(theUrl);
-		HttpURLConnection connection = (HttpURLConnection) myURL.openConnection();
-		return connection;
-	}
+	// MD5 computed while streaming in downloadToFile, null if not computed
+	private String mStreamedMD5 = null;
 
 	public DownloadUrl(String theUrl, File theDestFile, String theMD5,
 			int theRetries, int theBaseTimeout, String theRequestMethod,
@@ -68,86 +87,100 @@ public class DownloadUrl
 		mRequestProperties = theRequestProperties;
 	}
 
-	protected int checkResponseCode(HttpURLConnection theConnection) throws IOException
+	protected int checkResponseCode(HttpResponse<InputStream> theResponse) throws IOException
 	{
-		int code = theConnection.getResponseCode();
+		int code = theResponse.statusCode();
 		//StdMwDownload.printLn("Download_Mixin::makeConnection getResponseCode = " + code);
 		if ((code >= 300) && (code < 400))
 		{
-			URL redirectUrl = new URL(theConnection.getHeaderField("Location"));
+			String redirectUrl = theResponse.headers().firstValue("Location").orElse(null);
 			StdMwDownload.printLn("Download_Mixin::makeConnection redirectUrl = " + redirectUrl);
 		}
 		else if ((451==code)||(403==code))
 		{
-			StdMwDownload.printLn("Download_Mixin::makeConnection Redacted/Forbidden = " + theConnection.getURL());
+			StdMwDownload.printLn("Download_Mixin::makeConnection Redacted/Forbidden = " + theResponse.uri());
 		}
 		return code;
 	}
 
-	protected HttpURLConnection makeConnection() throws MalformedURLException, IOException
+	/**
+	 * Body of theResponse. When not following redirects, a 3xx body is
+	 * returned as is, as HttpURLConnection did; any other non-2xx status
+	 * throws from MWHttpClient.checkedBody.
+	 */
+	protected InputStream responseBody(HttpResponse<InputStream> theResponse) throws IOException
 	{
-		//StdMwDownload.printLn("Download_Mixin::makeConnection mUrl = " + mUrl);
-		HttpURLConnection connection = openConnection(mUrl);
-		connection.setConnectTimeout(mBaseTimeout * 1);
-		connection.setReadTimeout(mBaseTimeout * 10);
-		connection.setDoOutput(true);
-		connection.setDoInput(true);
-		connection.setInstanceFollowRedirects(mFollowRedirectsFlag);
-		connection.setRequestMethod(mRequestMethod);
-		connection.setRequestProperty("Content-Type", mContentType);
-		if (null != mParameters)
+		int code = theResponse.statusCode();
+		if ((!mFollowRedirectsFlag)&&(code >= 300)&&(code < 400))
 		{
-			connection.setRequestProperty("Content-Length", "" + Integer.toString(mParameters.getBytes().length));
+			return theResponse.body();
 		}
+		return MWHttpClient.checkedBody(theResponse);
+	}
+
+	protected HttpRequest makeRequest()
+	{
+		//StdMwDownload.printLn("Download_Mixin::makeRequest mUrl = " + mUrl);
+		// connect timeout (mBaseTimeout) is set on the shared client
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(mUrl))
+				.timeout(Duration.ofMillis(mBaseTimeout * 10L))
+				.header("Content-Type", mContentType);
 		if (null != mRequestProperties)
 		{
 			for (Entry<String, String> pair : mRequestProperties.entrySet())
 			{
-				connection.setRequestProperty(pair.getKey(), pair.getValue());
+				builder.header(pair.getKey(), pair.getValue());
 			}
 		}
-		connection.setUseCaches(false);
-		return connection;
+		// resume a partial file download, only if the server can tell us it changed
+		File partFile = getPartFile();
+		String validator = readValidator();
+		if ((null!=partFile)&&(partFile.length()>0)&&(null!=validator))
+		{
+			StdMwDownload.printLn("makeRequest resume " + partFile.getAbsolutePath() + " from " + partFile.length() + " if " + validator);
+			builder.header("Range", "bytes=" + partFile.length() + "-");
+			// server sends the whole file (200) instead if it no longer matches
+			builder.header("If-Range", validator);
+		}
+		// Content-Length is set by HttpClient from the body
+		HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+		if (null != mParameters)
+		{
+			StdMwDownload.printLn("makeRequest URL=" + mUrl);
+			StdMwDownload.printLn("makeRequest mParameters " + mParameters);
+			body = HttpRequest.BodyPublishers.ofByteArray(mParameters.getBytes());
+		}
+		builder.method(mRequestMethod, body);
+		return builder.build();
 	}
 
-	protected String downloadToString(HttpURLConnection theConnection) throws IOException
+	protected String downloadToString(HttpResponse<InputStream> theResponse) throws IOException
 	{
 		String result = null;
-		try (DataOutputStream wr = new DataOutputStream(theConnection.getOutputStream()))
+		int responseCode = checkResponseCode(theResponse);
+		if ((451==responseCode)||(403==responseCode))
 		{
-			if (null != mParameters)
-			{
-				StdMwDownload.printLn("downloadToString URL=" + mUrl);
-				StdMwDownload.printLn("downloadToString mParameters " + mParameters);
-				wr.write(mParameters.getBytes());
-			}
-			wr.flush();
-			int responseCode = checkResponseCode(theConnection);
-			if ((451==responseCode)||(403==responseCode))
-			{
-				StdMwDownload.printLn("Skip downloadToString, redacted/forbidden file " + mDestFile + " for URL=" + mUrl);
-				if (mDestFile.exists())
-				{
-					mDestFile.delete();
-				}
-				result = null;
-			}
-			else
+			StdMwDownload.printLn("Skip downloadToString, redacted/forbidden file " + mDestFile + " for URL=" + mUrl);
+			result = null;
+		}
+		else
+		{
+			try (InputStream is = responseBody(theResponse))
 			{
-				result = IOUtils.toString(theConnection.getInputStream(), Charset.defaultCharset());
+				result = IOUtils.toString(is, Charset.defaultCharset());
 				//StdMwDownload.printLn(result);
 			}
 		}
 		return result;
 	}
 
-	protected File downloadToDir(HttpURLConnection theConnection) throws Exception
+	protected File downloadToDir(HttpResponse<InputStream> theResponse) throws Exception
 	{
 		File result = null;
 		File downloadFile = null;
 		try
 		{
-			int responseCode = checkResponseCode(theConnection);
+			int responseCode = checkResponseCode(theResponse);
 			if ((451==responseCode)||(403==responseCode))
 			{
 				StdMwDownload.printLn("Skip downloadToDir, redacted/forbidden file " + mDestFile + " for URL=" + mUrl);
@@ -159,7 +192,7 @@ public class DownloadUrl
 			}
 			else
 			{
-				String filename = theConnection.getHeaderField("Content-Disposition");
+				String filename = theResponse.headers().firstValue("Content-Disposition").orElse("");
 				if (filename.contains("filename="))
 				{
 					filename = filename.substring(filename.lastIndexOf("filename=") + "filename=".length());
@@ -172,7 +205,7 @@ public class DownloadUrl
 				}
 				else
 				{
-					org.apache.commons.io.FileUtils.copyInputStreamToFile(theConnection.getInputStream(), mDestFile);
+					org.apache.commons.io.FileUtils.copyInputStreamToFile(responseBody(theResponse), mDestFile);
 					StdMwDownload.printLn("Download succeeded 1: " + mDestFile + " for URL=" + mUrl);
 				}
 				result = downloadFile;
@@ -193,142 +226,341 @@ public class DownloadUrl
 		return result;
 	}
 
-	protected File downloadToFile(HttpURLConnection theConnection) throws Exception
+	/**
+	 * Partial download for mDestFile, only used when mDestFile is a file
+	 * not yet downloaded.
+	 * 
+	 * @return .part file or null
+	 */
+	protected File getPartFile()
 	{
-		File result = null;
-		try
+		File partFile = null;
+		if ((null!=mDestFile)&&(!mDestFile.isDirectory())&&(!mDestFile.exists()))
 		{
-			int responseCode = checkResponseCode(theConnection);
-			if ((451==responseCode)||(403==responseCode))
+			partFile = new File(mDestFile.getParentFile(), mDestFile.getName() + ".part");
+		}
+		return partFile;
+	}
+
+	/**
+	 * ETag or Last-Modified of the response the .part file came from,
+	 * sent as If-Range when resuming.
+	 *
+	 * @return .part.validator file or null
+	 */
+	protected File getValidatorFile()
+	{
+		File validatorFile = null;
+		if ((null!=mDestFile)&&(!mDestFile.isDirectory()))
+		{
+			validatorFile = new File(mDestFile.getParentFile(), mDestFile.getName() + ".part.validator");
+		}
+		return validatorFile;
+	}
+
+	/**
+	 * @return validator for the .part file, or null if none was stored
+	 */
+	protected String readValidator()
+	{
+		String validator = null;
+		File validatorFile = getValidatorFile();
+		if ((null!=validatorFile)&&(validatorFile.exists()))
+		{
+			try
 			{
-				StdMwDownload.printLn("Skip download, redacted/forbidden file " + mDestFile + " for URL=" + mUrl);
-				if (mDestFile.exists())
-				{
-					mDestFile.delete();
-				}
-				result = null;
+				validator = java.nio.file.Files.readString(validatorFile.toPath(), StandardCharsets.UTF_8).trim();
 			}
-			else if (mDestFile.exists())
+			catch (IOException exp)
 			{
-				StdMwDownload.printLn("Skip download, already downloaded " + mDestFile + " for URL=" + mUrl);
-				result = mDestFile;
+				StdMwDownload.printWarn("readValidator unable to read " + validatorFile.getAbsolutePath() + " " + exp.getMessage());
 			}
-			else
+			if ((null!=validator)&&(validator.isEmpty()))
 			{
-				org.apache.commons.io.FileUtils.copyInputStreamToFile(theConnection.getInputStream(), mDestFile);
-				StdMwDownload.printLn("Download succeeded 2: " + mDestFile + " for URL=" + mUrl);
-				result = mDestFile;
+				validator = null;
 			}
 		}
-		catch (Exception rethrownExp)
+		return validator;
+	}
+
+	/**
+	 * Store the validator for a full (200) response, so an interrupted
+	 * download can be resumed with If-Range. A weak ETag cannot be used
+	 * with If-Range, so Last-Modified is used instead. With neither, the
+	 * next attempt starts over.
+	 */
+	protected void writeValidator(HttpResponse<InputStream> theResponse) throws IOException
+	{
+		File validatorFile = getValidatorFile();
+		String validator = theResponse.headers().firstValue("ETag").orElse(null);
+		if ((null==validator)||(validator.startsWith("W/")))
+		{
+			validator = theResponse.headers().firstValue("Last-Modified").orElse(null);
+		}
+		if (null==validator)
+		{
+			validatorFile.delete();
+		}
+		else
 		{
-			if (null != mDestFile)
+			java.nio.file.Files.write(validatorFile.toPath(), validator.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	protected File downloadToFile(HttpResponse<InputStream> theResponse) throws Exception
+	{
+		File result = null;
+		int responseCode = checkResponseCode(theResponse);
+		if ((451==responseCode)||(403==responseCode))
+		{
+			StdMwDownload.printLn("Skip download, redacted/forbidden file " + mDestFile + " for URL=" + mUrl);
+			if (mDestFile.exists())
 			{
-				if (mDestFile.exists())
+				mDestFile.delete();
+			}
+			File partFile = new File(mDestFile.getParentFile(), mDestFile.getName() + ".part");
+			if (partFile.exists())
+			{
+				partFile.delete();
+			}
+			getValidatorFile().delete();
+			result = null;
+		}
+		else if (mDestFile.exists())
+		{
+			StdMwDownload.printLn("Skip download, already downloaded " + mDestFile + " for URL=" + mUrl);
+			result = mDestFile;
+		}
+		else
+		{
+			// partial download is kept on error, so a retry requests only the remainder
+			File partFile = getPartFile();
+			MessageDigest md5 = MessageDigest.getInstance(MessageDigestAlgorithms.MD5);
+			long offset = partFile.length();
+			boolean append = false;
+			if ((206==responseCode)&&(offset>0))
+			{
+				String range = theResponse.headers().firstValue("Content-Range").orElse("");
+				if (!range.startsWith("bytes " + offset + "-"))
 				{
-					StdMwDownload.printLn("remove partial download" + " for URL=" + mUrl);
-					mDestFile.delete();
+					partFile.delete();
+					IOUtils.closeQuietly(theResponse.body());
+					throw new IOException("Unexpected Content-Range '" + range + "' resuming from " + offset + " for URL=" + mUrl);
+				}
+				append = true;
+				// include bytes already downloaded in the MD5
+				try (InputStream is = java.nio.file.Files.newInputStream(partFile.toPath()))
+				{
+					updateDigest(md5, is, null);
 				}
 			}
-			throw rethrownExp;
+			else if (416==responseCode)
+			{
+				// part file is not a prefix of the current file, start over
+				partFile.delete();
+				getValidatorFile().delete();
+				IOUtils.closeQuietly(theResponse.body());
+				throw new IOException("Range not satisfiable resuming from " + offset + " for URL=" + mUrl);
+			}
+			mDestFile.getAbsoluteFile().getParentFile().mkdirs();
+			if ((!append)&&(responseCode>=200)&&(responseCode<300))
+			{
+				// 200 means the server sent the whole file (new, or changed since
+				// the partial download), so start the partial file over
+				if (offset>0)
+				{
+					StdMwDownload.printLn("downloadToFile restart " + partFile.getAbsolutePath() + " discarding " + offset + " bytes for URL=" + mUrl);
+				}
+				writeValidator(theResponse);
+			}
+			OpenOption[] options = append ?
+					new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND } :
+					new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
+			try (InputStream is = responseBody(theResponse);
+					OutputStream os = java.nio.file.Files.newOutputStream(partFile.toPath(), options))
+			{
+				updateDigest(md5, is, os);
+			}
+			java.nio.file.Files.move(partFile.toPath(), mDestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			getValidatorFile().delete();
+			mStreamedMD5 = Hex.encodeHexString(md5.digest());
+			StdMwDownload.printLn("Download succeeded 2: " + mDestFile + " for URL=" + mUrl);
+			result = mDestFile;
 		}
 		return result;
 	}
 
+	static private void updateDigest(MessageDigest theDigest, InputStream theIn, OutputStream theOut) throws IOException
+	{
+		byte [] buffer = new byte[256*1024];
+		for (int bytesRead; (bytesRead = theIn.read(buffer)) >= 0;)
+		{
+			theDigest.update(buffer, 0, bytesRead);
+			if (null!=theOut)
+			{
+				theOut.write(buffer, 0, bytesRead);
+			}
+		}
+	}
+
+	/**
+	 * Download, retrying with backoff, and wait for the result.
+	 * 
+	 * @return result string, file path, or null for redacted/forbidden
+	 * @throws Exception last error, once retries are used up
+	 */
 	public String download() throws Exception
+	{
+		try
+		{
+			return downloadAsync().get();
+		}
+		catch (ExecutionException exp)
+		{
+			if (exp.getCause() instanceof Exception)
+			{
+				throw (Exception)exp.getCause();
+			}
+			throw exp;
+		}
+	}
+
+	/**
+	 * Download without blocking the caller. Retries are scheduled after
+	 * an exponential backoff with full jitter (M_BACKOFF_BASE_MS doubling
+	 * per attempt, up to M_BACKOFF_MAX_MS), rather than sleeping on a
+	 * thread. If the host circuit is open, the retry waits until it may
+	 * close.
+	 * 
+	 * @return future result string, file path, or null for redacted/forbidden
+	 */
+	public CompletableFuture<String> downloadAsync()
 	{
 		StdMwDownload.printLn("Using URL: " + mUrl);
-		String result = null;
-		int counts = 0;
-		while ((counts <= mRetries) && (null == result))
+		CompletableFuture<String> result = new CompletableFuture<>();
+		scheduleAttempt(result, 1, 0);
+		return result;
+	}
+
+	private void scheduleAttempt(CompletableFuture<String> theResult, int theCount, long theDelayMs)
+	{
+		Executor executor = M_DOWNLOAD_POOL;
+		if (theDelayMs>0)
+		{
+			executor = CompletableFuture.delayedExecutor(theDelayMs, TimeUnit.MILLISECONDS, M_DOWNLOAD_POOL);
+		}
+		executor.execute(() ->
 		{
-			counts = counts + 1;
-			HttpURLConnection connection = null;
 			try
 			{
-				connection = makeConnection();
-				if (null == mDestFile)
+				String result = attempt();
+				if ((null==result)&&(theCount + 1 <= mRetries + 1))
 				{
-					result = downloadToString(connection);
+					// redacted/forbidden, try again
+					scheduleAttempt(theResult, theCount + 1, 0);
 				}
-				else if (mDestFile.isDirectory())
+				else
 				{
-					File tmp = downloadToDir(connection);
-					if (null!=tmp)
-					{
-						result = tmp.getAbsolutePath();
-					}
-					else
-					{
-						result = null;
-					}
+					theResult.complete(result);
 				}
-				else if (!mDestFile.isDirectory())
+			}
+			catch (Exception rethrownExp)
+			{
+				// error body, if any, is in the exception message (see responseBody)
+				StdMwDownload.printWarn("exception thrown: " + rethrownExp.toString() + " for URL=" + mUrl);
+				if (theCount + 1 <= mRetries)
 				{
-					File tmp = downloadToFile(connection);
-					if (null!=tmp)
-					{
-						result = tmp.getAbsolutePath();
-					}
-					else
-					{
-						result = null;
-					}
+					long delay = getRetryDelay(theCount, rethrownExp);
+					StdMwDownload.printWarn("retrying #" + (theCount + 1) + " in " + delay + " ms for " + mUrl);
+					scheduleAttempt(theResult, theCount + 1, delay);
 				}
 				else
 				{
-					throw new Exception("Unable to determine how to download using " + mDestFile);
-				}
-				if ((null!=result)&&(null!=mMD5))
-				{
-					String md5 = new DigestUtils(MessageDigestAlgorithms.MD5).digestAsHex(new File(result));
-					if (!md5.equals(mMD5))
-					{
-						throw new Exception("MD5 '" + md5 + "' does not match expected value '" + mMD5 + " for URL=" + mUrl);
-					}
+					StdMwDownload.printErr("error tried " + theCount + " no more retries for " + mUrl);
+					theResult.completeExceptionally(rethrownExp);
 				}
 			}
-			catch (Exception rethrownExp)
+		});
+	}
+
+	protected long getRetryDelay(int theCount, Exception theExp)
+	{
+		long cap = M_BACKOFF_MAX_MS;
+		if (theCount<31)
+		{
+			cap = Math.min(M_BACKOFF_MAX_MS, M_BACKOFF_BASE_MS << (theCount - 1));
+		}
+		long delay = ThreadLocalRandom.current().nextLong(cap + 1);
+		if (theExp instanceof HostCircuitBreaker.CircuitOpenException)
+		{
+			delay = Math.max(delay, ((HostCircuitBreaker.CircuitOpenException)theExp).getRetryAfterMs());
+		}
+		return delay;
+	}
+
+	protected String attempt() throws Exception
+	{
+		String result = null;
+		HttpResponse<InputStream> response = null;
+		mStreamedMD5 = null;
+		try
+		{
+			response = MWHttpClient.send(makeRequest(), mFollowRedirectsFlag);
+			if (null == mDestFile)
+			{
+				result = downloadToString(response);
+			}
+			else if (mDestFile.isDirectory())
 			{
-				if (null != connection)
+				File tmp = downloadToDir(response);
+				if (null!=tmp)
 				{
-					InputStream errorStr = connection.getErrorStream();
-					if (null != errorStr)
-					{
-						StdMwDownload.printWarn("WARNING stream returned: " + IOUtils.toString(errorStr, Charset.defaultCharset()) + " for URL=" + mUrl);
-					}
-					else
-					{
-						StdMwDownload.printWarn("No WARNING stream returned for URL=" + mUrl);
-					}
+					result = tmp.getAbsolutePath();
 				}
-				StdMwDownload.printWarn("exception thrown: " + rethrownExp.toString() + " for URL=" + mUrl);
-				if (counts + 1 <= mRetries)
+				else
+				{
+					result = null;
+				}
+			}
+			else if (!mDestFile.isDirectory())
+			{
+				File tmp = downloadToFile(response);
+				if (null!=tmp)
 				{
-					StdMwDownload.printWarn("retrying #" + (counts + 1) + " in one minute for " + mUrl);
-					try
-					{
-						Thread.sleep(1000 * 60);
-					}
-					catch (Exception exp)
-					{
-						// ignore
-					}
+					result = tmp.getAbsolutePath();
 				}
 				else
 				{
-					StdMwDownload.printErr("error tried " + counts + " no more retries for " + mUrl);
-					throw rethrownExp;
+					result = null;
 				}
 			}
-			finally
+			else
+			{
+				throw new Exception("Unable to determine how to download using " + mDestFile);
+			}
+			if ((null!=result)&&(null!=mMD5))
 			{
-				if (null != connection)
+				String md5 = mStreamedMD5;
+				if (null==md5)
+				{
+					md5 = new DigestUtils(MessageDigestAlgorithms.MD5).digestAsHex(new File(result));
+				}
+				if (!md5.equals(mMD5))
 				{
-					connection.disconnect();
+					// remove, so retry downloads again instead of skipping existing file
+					new File(result).delete();
+					throw new Exception("MD5 '" + md5 + "' does not match expected value '" + mMD5 + " for URL=" + mUrl);
 				}
 			}
 		}
+		finally
+		{
+			if (null != response)
+			{
+				// release connection back to the pool
+				IOUtils.closeQuietly(response.body());
+			}
+		}
 		return result;
 	}
 }
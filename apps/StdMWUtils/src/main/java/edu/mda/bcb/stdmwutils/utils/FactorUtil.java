@@ -27,9 +27,8 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeSet;
 
@@ -52,13 +51,13 @@ public class FactorUtil
 		return mDataMap.get(theHash);
 	}
 
-	private int loadFactors() throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
+	private int loadFactors() throws MalformedURLException, IOException, StdMwException
 	{
 		mDataMap = new DataMap<>();
 		String url = MWUrls.getAllFactors(mStudyId);
 		StdMwDownload.printLn("FactorUtil - connecting to " + url);
 		int countSamples = 0;
-		try (InputStream is = new URL(url).openStream(); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
+		try (InputStream is = MWHttpClient.openStream(url); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
 		{
 			GsonBuilder builder = new GsonBuilder();
 			Gson gson = builder.create();
@@ -93,35 +92,93 @@ public class FactorUtil
 		return countSamples;
 	}
 	
-	static private int getFactorsForStudy(String theStudyId, TreeSet<Factor> theFactors) throws IOException, MalformedURLException, NoSuchAlgorithmException, StdMwException
+	// factors already loaded for a study, so the Factors servlet, summaries and
+	// downloadDataOptions share one request; cleared by Scheduled.updateUtilObjects
+	static public int M_CACHE_STUDIES = 256;
+	static public long M_CACHE_TTL_MS = 60L * 60L * 1000L;
+
+	static private class LoadedFactors
 	{
-		StdMwDownload.printLn("FactorUtil getFactorsForStudy");
+		final TreeSet<Factor> mFactors;
+		final int mSampleCount;
+		final long mLoaded;
+
+		LoadedFactors(TreeSet<Factor> theFactors, int theSampleCount)
+		{
+			mFactors = theFactors;
+			mSampleCount = theSampleCount;
+			mLoaded = System.currentTimeMillis();
+		}
+	}
+
+	static private final LinkedHashMap<String, LoadedFactors> M_CACHE = new LinkedHashMap<>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LoadedFactors> theEldest)
+		{
+			return size()>M_CACHE_STUDIES;
+		}
+	};
+
+	static public void clearCache()
+	{
+		synchronized(M_CACHE)
+		{
+			M_CACHE.clear();
+		}
+	}
+
+	/**
+	 * Factors for theStudyId, fetched and parsed once and then taken from
+	 * the cache. The returned set is shared, do not modify it.
+	 */
+	static private LoadedFactors getLoadedFactors(String theStudyId) throws IOException, MalformedURLException, StdMwException
+	{
+		synchronized(M_CACHE)
+		{
+			LoadedFactors loaded = M_CACHE.get(theStudyId);
+			if ((null!=loaded)&&((System.currentTimeMillis() - loaded.mLoaded)<=M_CACHE_TTL_MS))
+			{
+				return loaded;
+			}
+		}
 		FactorUtil au = new FactorUtil(theStudyId);
 		int countSamples = au.loadFactors();
-		theFactors.addAll(au.mDataMap.getAll());
-		return countSamples;
+		LoadedFactors loaded = new LoadedFactors(au.mDataMap.getAll(), countSamples);
+		synchronized(M_CACHE)
+		{
+			M_CACHE.put(theStudyId, loaded);
+		}
+		return loaded;
 	}
-	
-	static public int getFactorNameListForStudy(String theStudyId, TreeSet<String> theNames) throws IOException, MalformedURLException, NoSuchAlgorithmException, StdMwException
+
+	static private TreeSet<String> getFactorNames(TreeSet<Factor> theFactors)
 	{
-		StdMwDownload.printLn("FactorUtil getFactorNameListForStudy");
-		TreeSet<Factor> factors = new TreeSet<>();
-		int sampleCount = getFactorsForStudy(theStudyId, factors);
-		for (Factor fac : factors)
+		TreeSet<String> names = new TreeSet<>();
+		for (Factor fac : theFactors)
 		{
 			for (String name : fac.factorMap.keySet())
 			{
-				theNames.add(name);
+				names.add(name);
 			}
 		}
-		return sampleCount;
+		return names;
+	}
+
+	static public int getFactorNameListForStudy(String theStudyId, TreeSet<String> theNames) throws IOException, MalformedURLException, StdMwException
+	{
+		StdMwDownload.printLn("FactorUtil getFactorNameListForStudy");
+		LoadedFactors loaded = getLoadedFactors(theStudyId);
+		theNames.addAll(getFactorNames(loaded.mFactors));
+		return loaded.mSampleCount;
 	}
 	
 	
-	static public void getBatchesTSV(OutputStream theOut, String theStudyId) throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
+	static public void getBatchesTSV(OutputStream theOut, String theStudyId) throws MalformedURLException, IOException, StdMwException
 	{
-		TreeSet<String> names = new TreeSet<>();
-		getFactorNameListForStudy(theStudyId, names);
+		// names and rows come from the same fetch
+		TreeSet<Factor> factors = getLoadedFactors(theStudyId).mFactors;
+		TreeSet<String> names = getFactorNames(factors);
 		// headers
 		theOut.write("Samples".getBytes());
 		for(String name : names)
@@ -130,8 +187,6 @@ public class FactorUtil
 		}
 		theOut.write("\n".getBytes());
 		// write rows
-		TreeSet<Factor> factors = new TreeSet<>();
-		getFactorsForStudy(theStudyId, factors);
 		for (Factor fac : factors)
 		{
 			theOut.write(fac.local_sample_id.getBytes());
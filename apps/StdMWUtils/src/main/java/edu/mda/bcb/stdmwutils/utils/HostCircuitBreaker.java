@@ -0,0 +1,93 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import java.io.IOException;
+import java.util.TreeMap;
+
+/**
+ * Per-host circuit breaker. After M_FAILURE_THRESHOLD consecutive errors
+ * (connection failures or 5xx responses) requests to that host fail
+ * immediately for M_OPEN_MS. After that, requests are allowed again, and
+ * one more error re-opens the circuit.
+ *
+ * @author Tod-Casasent
+ */
+public class HostCircuitBreaker
+{
+	static public int M_FAILURE_THRESHOLD = 5;
+	static public long M_OPEN_MS = 2L * 60L * 1000L;
+
+	static public class CircuitOpenException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+		private final long mRetryAfterMs;
+
+		public CircuitOpenException(String theMessage, long theRetryAfterMs)
+		{
+			super(theMessage);
+			mRetryAfterMs = theRetryAfterMs;
+		}
+
+		public long getRetryAfterMs()
+		{
+			return mRetryAfterMs;
+		}
+	}
+
+	static private class State
+	{
+		public int mFailures = 0;
+		public long mOpenUntil = 0;
+	}
+
+	static private final TreeMap<String, State> M_STATES = new TreeMap<>();
+
+	static private State getState(String theHost)
+	{
+		State state = M_STATES.get(theHost);
+		if (null==state)
+		{
+			state = new State();
+			M_STATES.put(theHost, state);
+		}
+		return state;
+	}
+
+	synchronized static public void checkAllowed(String theHost) throws CircuitOpenException
+	{
+		State state = getState(theHost);
+		long remaining = state.mOpenUntil - System.currentTimeMillis();
+		if (remaining>0)
+		{
+			throw new CircuitOpenException("Circuit open for host " + theHost + " after " + state.mFailures + " errors, retry in " + remaining + " ms", remaining);
+		}
+	}
+
+	synchronized static public void recordSuccess(String theHost)
+	{
+		State state = getState(theHost);
+		state.mFailures = 0;
+		state.mOpenUntil = 0;
+	}
+
+	synchronized static public void recordFailure(String theHost)
+	{
+		State state = getState(theHost);
+		state.mFailures += 1;
+		if (state.mFailures>=M_FAILURE_THRESHOLD)
+		{
+			state.mOpenUntil = System.currentTimeMillis() + M_OPEN_MS;
+			StdMwDownload.printWarn("HostCircuitBreaker open for " + theHost + " errors=" + state.mFailures + " for " + M_OPEN_MS + " ms");
+		}
+	}
+}
@@ -0,0 +1,210 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Shared HTTP client for all Metabolomics Workbench and PubChem requests.
+ * HttpClient pools connections (HTTP/2 where the server supports it,
+ * otherwise keep-alive HTTP/1.1), so requests to the same host reuse
+ * connections instead of doing a TLS handshake per request.
+ *
+ * @author Tod-Casasent
+ */
+public class MWHttpClient
+{
+	static public int M_CONNECT_TIMEOUT_MS = 60000;
+	static public int M_REQUEST_TIMEOUT_MS = 600000;
+
+	static private HttpClient M_CLIENT_REDIRECT = null;
+	static private HttpClient M_CLIENT_NO_REDIRECT = null;
+
+	synchronized static public HttpClient getClient(boolean theFollowRedirectsFlag)
+	{
+		if (null==M_CLIENT_REDIRECT)
+		{
+			M_CLIENT_REDIRECT = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_2)
+					.followRedirects(HttpClient.Redirect.NORMAL)
+					.connectTimeout(Duration.ofMillis(M_CONNECT_TIMEOUT_MS))
+					.build();
+			M_CLIENT_NO_REDIRECT = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_2)
+					.followRedirects(HttpClient.Redirect.NEVER)
+					.connectTimeout(Duration.ofMillis(M_CONNECT_TIMEOUT_MS))
+					.build();
+		}
+		HttpClient client = M_CLIENT_NO_REDIRECT;
+		if (theFollowRedirectsFlag)
+		{
+			client = M_CLIENT_REDIRECT;
+		}
+		return client;
+	}
+
+	/**
+	 * Send theRequest once the RequestGovernor allows it. The in-flight
+	 * slot is held until the response body is closed, so callers must
+	 * close it.
+	 */
+	static public HttpResponse<InputStream> send(HttpRequest theRequest, boolean theFollowRedirectsFlag) throws IOException
+	{
+		String host = theRequest.uri().getHost();
+		HostCircuitBreaker.checkAllowed(host);
+		RequestGovernor.Permit permit = RequestGovernor.acquire(host);
+		HttpResponse<InputStream> response = null;
+		try
+		{
+			response = getClient(theFollowRedirectsFlag).send(theRequest, HttpResponse.BodyHandlers.ofInputStream());
+		}
+		catch (IOException exp)
+		{
+			permit.release();
+			HostCircuitBreaker.recordFailure(host);
+			throw exp;
+		}
+		catch (InterruptedException exp)
+		{
+			permit.release();
+			Thread.currentThread().interrupt();
+			InterruptedIOException ioExp = new InterruptedIOException("Interrupted requesting " + theRequest.uri());
+			ioExp.initCause(exp);
+			throw ioExp;
+		}
+		RequestGovernor.recordResponse(host, response.statusCode());
+		if (response.statusCode()>=500)
+		{
+			HostCircuitBreaker.recordFailure(host);
+		}
+		else
+		{
+			HostCircuitBreaker.recordSuccess(host);
+		}
+		return new GovernedResponse(response, permit.wrap(response.body()));
+	}
+
+	/**
+	 * theResponse with its body replaced by one that releases the
+	 * RequestGovernor permit on close.
+	 */
+	static private class GovernedResponse implements HttpResponse<InputStream>
+	{
+		private final HttpResponse<InputStream> mResponse;
+		private final InputStream mBody;
+
+		GovernedResponse(HttpResponse<InputStream> theResponse, InputStream theBody)
+		{
+			mResponse = theResponse;
+			mBody = theBody;
+		}
+
+		@Override
+		public int statusCode()
+		{
+			return mResponse.statusCode();
+		}
+
+		@Override
+		public HttpRequest request()
+		{
+			return mResponse.request();
+		}
+
+		@Override
+		public Optional<HttpResponse<InputStream>> previousResponse()
+		{
+			return mResponse.previousResponse();
+		}
+
+		@Override
+		public HttpHeaders headers()
+		{
+			return mResponse.headers();
+		}
+
+		@Override
+		public InputStream body()
+		{
+			return mBody;
+		}
+
+		@Override
+		public Optional<SSLSession> sslSession()
+		{
+			return mResponse.sslSession();
+		}
+
+		@Override
+		public URI uri()
+		{
+			return mResponse.uri();
+		}
+
+		@Override
+		public HttpClient.Version version()
+		{
+			return mResponse.version();
+		}
+	}
+
+	/**
+	 * GET theUrl, following redirects. Replaces URL.openStream.
+	 *
+	 * @param theUrl URL to read
+	 * @return response body, caller closes
+	 * @throws IOException on connection error or non-2xx status
+	 */
+	static public InputStream openStream(String theUrl) throws IOException
+	{
+		HttpRequest request = HttpRequest.newBuilder(URI.create(theUrl))
+				.timeout(Duration.ofMillis(M_REQUEST_TIMEOUT_MS))
+				.GET()
+				.build();
+		HttpResponse<InputStream> response = send(request, true);
+		return checkedBody(response);
+	}
+
+	/**
+	 * Body of theResponse, if status is 2xx. Otherwise the body is read
+	 * for the error message, closed, and an IOException is thrown.
+	 *
+	 * @param theResponse response to check
+	 * @return response body, caller closes
+	 * @throws IOException for non-2xx status
+	 */
+	static public InputStream checkedBody(HttpResponse<InputStream> theResponse) throws IOException
+	{
+		int code = theResponse.statusCode();
+		if ((code<200)||(code>=300))
+		{
+			String message = null;
+			try (InputStream is = theResponse.body())
+			{
+				message = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+			}
+			throw new IOException("HTTP " + code + " for URL=" + theResponse.uri() + " " + message);
+		}
+		return theResponse.body();
+	}
+}
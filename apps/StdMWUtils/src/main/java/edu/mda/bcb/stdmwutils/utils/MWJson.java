@@ -0,0 +1,104 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+package edu.mda.bcb.stdmwutils.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import edu.mda.bcb.stdmwutils.StdMwException;
+import java.io.IOException;
+import java.io.Reader;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Streaming parser for Metabolomics Workbench REST JSON. The REST API
+ * returns either a single object, or an object of numbered objects
+ * ({"1":{...},"2":{...}} or {"Row1":{...},...}), or an empty array when
+ * there are no results. Objects are mapped and handed to the caller as
+ * they are read, without building the whole JsonElement tree.
+ *
+ * @author Tod-Casasent
+ */
+public class MWJson
+{
+	static final public Gson M_GSON = new GsonBuilder().create();
+
+	@FunctionalInterface
+	public interface Handler<T>
+	{
+		void handle(T theObject) throws IOException, NoSuchAlgorithmException, StdMwException;
+	}
+
+	/**
+	 * Stream objects of theClass from theReader.
+	 *
+	 * @param theReader JSON to read
+	 * @param theClass class to map each object to
+	 * @param theFirstKey key of the first numbered object ("1" or "Row1"), or null if the response is always numbered objects
+	 * @param theHandler called for each object, in order
+	 * @return number of objects read, -1 if response was not a JSON object
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws StdMwException
+	 */
+	static public <T> int streamObjects(Reader theReader, Class<T> theClass, String theFirstKey, Handler<T> theHandler) throws IOException, NoSuchAlgorithmException, StdMwException
+	{
+		int count = 0;
+		JsonReader reader = new JsonReader(theReader);
+		// match JsonParser.parseReader
+		reader.setStrictness(Strictness.LENIENT);
+		if (JsonToken.BEGIN_OBJECT!=reader.peek())
+		{
+			// empty array (no results) or unexpected value
+			reader.skipValue();
+			return -1;
+		}
+		TypeAdapter<T> adapter = M_GSON.getAdapter(theClass);
+		reader.beginObject();
+		if (reader.hasNext())
+		{
+			String name = reader.nextName();
+			if ((null==theFirstKey)||(theFirstKey.equals(name)))
+			{
+				// numbered objects
+				theHandler.handle(adapter.read(reader));
+				count += 1;
+				while (reader.hasNext())
+				{
+					reader.nextName();
+					theHandler.handle(adapter.read(reader));
+					count += 1;
+				}
+			}
+			else
+			{
+				// single object, the fields have started, so collect the rest (small) then map
+				TypeAdapter<JsonElement> elementAdapter = M_GSON.getAdapter(JsonElement.class);
+				JsonObject jObj = new JsonObject();
+				jObj.add(name, elementAdapter.read(reader));
+				while (reader.hasNext())
+				{
+					name = reader.nextName();
+					jObj.add(name, elementAdapter.read(reader));
+				}
+				theHandler.handle(adapter.fromJsonTree(jObj));
+				count += 1;
+			}
+		}
+		reader.endObject();
+		return count;
+	}
+}
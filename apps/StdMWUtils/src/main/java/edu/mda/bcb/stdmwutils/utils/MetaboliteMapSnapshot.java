@@ -0,0 +1,115 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * The MetaboliteMapUtil TSV for every analysis, written once into a
+ * single file with an index of where each analysis starts and how long
+ * it is. Built when Scheduled.updateUtilObjects loads new data, so
+ * requests copy bytes from the file instead of joining Metabolite,
+ * RefMet and OtherIds again.
+ *
+ * @author Tod-Casasent
+ */
+public class MetaboliteMapSnapshot
+{
+	static public boolean M_ENABLED = true;
+	static public String M_PREFIX = "metabolite_map_";
+
+	/**
+	 * Write the map for each analysis in theMMU to a new file in theDir.
+	 */
+	static public MetaboliteMapSnapshot build(File theDir, MetaboliteMapUtil theMMU) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		theDir.mkdirs();
+		File output = new File(theDir, M_PREFIX + start + ".tsv");
+		HashMap<String, long []> index = new HashMap<>();
+		try (FileOutputStream fos = new FileOutputStream(output))
+		{
+			FileChannel channel = fos.getChannel();
+			for (String analysisId : theMMU.mMetabolite.getAnalysisIds())
+			{
+				long offset = channel.position();
+				// streamTsv flushes but does not close, so position is the end of this analysis
+				theMMU.streamTsv(fos, analysisId);
+				index.put(analysisId, new long [] { offset, channel.position() - offset });
+			}
+		}
+		StdMwDownload.printLn("MetaboliteMapSnapshot analyses=" + index.size() + " bytes=" + output.length()
+				+ " ms=" + (System.currentTimeMillis() - start) + " file=" + output.getAbsolutePath());
+		return new MetaboliteMapSnapshot(output, index);
+	}
+
+	private final File mFile;
+	// analysis id to { offset, length }
+	private final HashMap<String, long []> mIndex;
+
+	private MetaboliteMapSnapshot(File theFile, HashMap<String, long []> theIndex)
+	{
+		mFile = theFile;
+		mIndex = theIndex;
+	}
+
+	public File getFile()
+	{
+		return mFile;
+	}
+
+	/**
+	 * @return length in bytes of the map for theAnalysisId, or -1 if it is not in the snapshot
+	 */
+	public long getLength(String theAnalysisId)
+	{
+		long [] entry = mIndex.get(theAnalysisId);
+		return (null==entry) ? -1 : entry[1];
+	}
+
+	/**
+	 * Copy the map for theAnalysisId to theOut with FileChannel.transferTo.
+	 *
+	 * @return false if theAnalysisId is not in the snapshot
+	 */
+	public boolean transferTo(String theAnalysisId, WritableByteChannel theOut) throws IOException
+	{
+		long [] entry = mIndex.get(theAnalysisId);
+		if (null==entry)
+		{
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(mFile.toPath(), StandardOpenOption.READ))
+		{
+			long position = entry[0];
+			long end = entry[0] + entry[1];
+			while (position < end)
+			{
+				long count = channel.transferTo(position, end - position, theOut);
+				if (count<=0)
+				{
+					// file truncated or replaced since the index was built
+					throw new IOException("MetaboliteMapSnapshot ended at " + position + " of " + end + " for " + theAnalysisId + " in " + mFile.getAbsolutePath());
+				}
+				position += count;
+			}
+		}
+		return true;
+	}
+}
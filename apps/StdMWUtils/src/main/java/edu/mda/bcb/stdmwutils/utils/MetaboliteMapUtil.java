@@ -16,9 +16,12 @@ import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
 import edu.mda.bcb.stdmwutils.mwdata.Metabolite;
 import edu.mda.bcb.stdmwutils.mwdata.RefMet;
 import edu.mda.bcb.stdmwutils.mwdata.OtherId;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -26,10 +29,36 @@ import java.util.TreeSet;
  */
 public class MetaboliteMapUtil
 {
+	static public int M_BUFFER_SIZE = 64 * 1024;
+
+	static private final byte [] M_HEADER = ("mtblt.metabolite_name\tmtblt.other_id\tmtblt.other_id_type\tmtblt.pubchem_id"
+			+ "\trefmet.refmet_name\trefmet.pubchem_cid\trefmet.inchi_key\trefmet.exactmass\trefmet.formula"
+			+ "\trefmet.super_class\trefmet.main_class\trefmet.sub_class"
+			+ "\toi.regno\toi.sys_name\toi.lm_id\toi.hmdb_id\toi.kegg_id\toi.chebi_id\toi.metacyc_id\toi.smiles\toi.name\n").getBytes(StandardCharsets.UTF_8);
+	// 8 RefMet and 9 OtherId columns, all empty
+	static private final byte [] M_EMPTY_SUFFIX = "\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\n".getBytes(StandardCharsets.UTF_8);
+	static private final byte [] M_TAB = "\t".getBytes(StandardCharsets.UTF_8);
+
+	static private MetaboliteMapUtil mInstance = null;
+
+	/**
+	 * Return a MetaboliteMapUtil for these utils, reusing the previous one
+	 * (and its precomputed rows) as long as the same cache load is passed in.
+	 */
+	static synchronized public MetaboliteMapUtil getInstance(MetaboliteUtil theMetabolite, RefMetUtil theRefMet, OtherIdsUtil theOtherIds)
+	{
+		if ((null==mInstance)||(mInstance.mMetabolite!=theMetabolite)||(mInstance.mRefMet!=theRefMet)||(mInstance.mOtherIds!=theOtherIds))
+		{
+			mInstance = new MetaboliteMapUtil(theMetabolite, theRefMet, theOtherIds);
+		}
+		return mInstance;
+	}
 
 	public MetaboliteUtil mMetabolite = null;
 	public RefMetUtil mRefMet = null;
 	public OtherIdsUtil mOtherIds = null;
+	// RefMet and OtherId columns (with leading tab and trailing newline) by mtb.refmet_name
+	private final ConcurrentHashMap<String, byte []> mRowSuffix = new ConcurrentHashMap<>();
 
 	public MetaboliteMapUtil(MetaboliteUtil theMetabolite, RefMetUtil theRefMet, OtherIdsUtil theOtherIds)
 	{
@@ -38,171 +67,80 @@ public class MetaboliteMapUtil
 		mOtherIds = theOtherIds;
 	}
 
+	private byte [] getRowSuffix(String theRefMetName)
+	{
+		if (null==theRefMetName)
+		{
+			return M_EMPTY_SUFFIX;
+		}
+		return mRowSuffix.computeIfAbsent(theRefMetName, name ->
+		{
+			// mtb.refmet_name may be empty, or RefMet may not exist
+			// in either case, rm will be null
+			RefMet rm = mRefMet.getRefMet(name);
+			if (null==rm)
+			{
+				return M_EMPTY_SUFFIX;
+			}
+			StringBuilder sb = new StringBuilder();
+			sb.append('\t').append(rm.name);
+			sb.append('\t').append(rm.pubchem_cid);
+			sb.append('\t').append(rm.inchi_key);
+			sb.append('\t').append(rm.exactmass);
+			sb.append('\t').append(rm.formula);
+			sb.append('\t').append(rm.super_class);
+			sb.append('\t').append(rm.main_class);
+			sb.append('\t').append(rm.sub_class);
+			// rm.pubchem_cid may be "NA"
+			// in which case, otherid will be null
+			OtherId otherid = mOtherIds.get(rm.pubchem_cid, rm.name);
+			if (null==otherid)
+			{
+				sb.append("\t\t\t\t\t\t\t\t\t");
+			}
+			else
+			{
+				sb.append('\t').append(MWUrls.cleanNull(otherid.regno));
+				sb.append('\t').append(MWUrls.cleanNull(otherid.sys_name));
+				sb.append('\t').append(MWUrls.cleanNull(otherid.lm_id));
+				sb.append('\t').append(MWUrls.cleanNull(otherid.hmdb_id));
+				sb.append('\t').append(MWUrls.cleanNull(otherid.kegg_id));
+				sb.append('\t').append(MWUrls.cleanNull(otherid.chebi_id));
+				sb.append('\t').append(MWUrls.cleanNull(otherid.metacyc_id));
+				sb.append('\t').append(MWUrls.cleanNull(otherid.smiles));
+				sb.append('\t').append(MWUrls.cleanNull(otherid.name));
+			}
+			sb.append('\n');
+			return sb.toString().getBytes(StandardCharsets.UTF_8);
+		});
+	}
+
+	/**
+	 * Write the map for theAnalysisId as UTF-8 TSV. Output is buffered and
+	 * flushed, but theOut is not closed.
+	 */
 	public void streamTsv(OutputStream theOut, String theAnalysisId) throws IOException
 	{
 		TreeSet<Metabolite> mblts = mMetabolite.getMetabolitesForAnalysis(theAnalysisId);
 		// handle no metablites
 		if (null!=mblts)
 		{
-			// header
-			theOut.write("mtblt.metabolite_name".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("mtblt.other_id".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("mtblt.other_id_type".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("mtblt.pubchem_id".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("refmet.refmet_name".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("refmet.pubchem_cid".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("refmet.inchi_key".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("refmet.exactmass".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("refmet.formula".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("refmet.super_class".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("refmet.main_class".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("refmet.sub_class".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.regno".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.sys_name".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.lm_id".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.hmdb_id".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.kegg_id".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.chebi_id".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.metacyc_id".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.smiles".getBytes());
-			theOut.write("\t".getBytes());
-			theOut.write("oi.name".getBytes());
-			theOut.write("\n".getBytes());
-			//
+			BufferedOutputStream bos = new BufferedOutputStream(theOut, M_BUFFER_SIZE);
+			bos.write(M_HEADER);
 			for (Metabolite mtb : mblts)
 			{
 				// write metabolite data
-				theOut.write(mtb.metabolite_name.getBytes());
-				theOut.write("\t".getBytes());
-				theOut.write(mtb.other_id.getBytes());
-				theOut.write("\t".getBytes());
-				theOut.write(mtb.other_id_type.getBytes());
-				theOut.write("\t".getBytes());
-				theOut.write(mtb.pubchem_id.getBytes());
-				theOut.write("\t".getBytes());
-				// mtb.refmet_name may be empty, or RefMet may not exist
-				// in either case, rm will be null
-				RefMet rm = mRefMet.getRefMet(mtb.refmet_name);
-				if (null==rm)
-				{
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write("".getBytes());
-				}
-				else
-				{
-					theOut.write(rm.name.getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write(rm.pubchem_cid.getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write(rm.inchi_key.getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write(rm.exactmass.getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write(rm.formula.getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write(rm.super_class.getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write(rm.main_class.getBytes());
-					theOut.write("\t".getBytes());
-					theOut.write(rm.sub_class.getBytes());
-					// rm.pubchem_cid may be "NA"
-					// in which case, otherid will be null
-					OtherId otherid = mOtherIds.get(rm.pubchem_cid, rm.name);
-					if (null==otherid)
-					{
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write("".getBytes());
-					}
-					else
-					{
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.regno).getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.sys_name).getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.lm_id).getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.hmdb_id).getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.kegg_id).getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.chebi_id).getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.metacyc_id).getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.smiles).getBytes());
-						theOut.write("\t".getBytes());
-						theOut.write(MWUrls.cleanNull(otherid.name).getBytes());
-					}
-					theOut.write("\n".getBytes());
-				}
+				bos.write(mtb.metabolite_name.getBytes(StandardCharsets.UTF_8));
+				bos.write(M_TAB);
+				bos.write(mtb.other_id.getBytes(StandardCharsets.UTF_8));
+				bos.write(M_TAB);
+				bos.write(mtb.other_id_type.getBytes(StandardCharsets.UTF_8));
+				bos.write(M_TAB);
+				bos.write(mtb.pubchem_id.getBytes(StandardCharsets.UTF_8));
+				// RefMet and OtherId columns are built once per refmet_name
+				bos.write(getRowSuffix(mtb.refmet_name));
 			}
+			bos.flush();
 		}
 	}
 }
@@ -12,12 +12,10 @@ package edu.mda.bcb.stdmwutils.utils;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import edu.mda.bcb.stdmwutils.DataToSet;
 import edu.mda.bcb.stdmwutils.StdMwDownload;
 import edu.mda.bcb.stdmwutils.StdMwException;
+import edu.mda.bcb.stdmwutils.StringPool;
 import edu.mda.bcb.stdmwutils.mwdata.Analysis;
 import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
 import edu.mda.bcb.stdmwutils.mwdata.Metabolite;
@@ -29,7 +27,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.OpenOption;
@@ -37,7 +34,6 @@ import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
 import java.util.TreeSet;
 
 /**
@@ -59,10 +55,8 @@ public class MetaboliteUtil
 		}
 		else
 		{
-			for (Analysis ana : theAU.getAnalysesAll())
-			{
-				au.fetchMetabolites(ana.analysis_id);
-			}
+			StringPool pool = new StringPool();
+			ParallelFetch.fetchAll("fetchMetabolites", theAU.getAnalysesAll(), ana -> au.fetchMetabolites(ana.analysis_id, pool));
 		}
 		if (theWrite)
 		{
@@ -91,6 +85,11 @@ public class MetaboliteUtil
 		return mDataToSet.getAll();
 	}
 
+	public TreeSet<String> getAnalysisIds()
+	{
+		return mDataToSet.getKeys();
+	}
+
 	public TreeSet<Metabolite> getMetabolitesForAnalysis(String theAnalysisId)
 	{
 		return mDataToSet.get(theAnalysisId);
@@ -104,45 +103,26 @@ public class MetaboliteUtil
 		return gson.toJson(mDataToSet.get(theAnalysisId));
 	}
 
-	private void fetchMetabolites(String theAnalysisId) throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
+	private void fetchMetabolites(String theAnalysisId, StringPool thePool) throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
 	{
 		String url = MWUrls.getMetabolites(theAnalysisId);
 		StdMwDownload.printLn("fetchMetabolites - connecting to " + url);
-		try (InputStream is = new URL(url).openStream(); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
+		try (InputStream is = ResponseCache.openStream(url); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
 		{
-			GsonBuilder builder = new GsonBuilder();
-			Gson gson = builder.create();
-			//gson.DisplayRun dr = gson.fromJson(jr, DisplayRun.class);
-			StdMwDownload.printLn("fetchMetabolites - call parse reader");
-			JsonElement jEle = JsonParser.parseReader(reader);
-			if (jEle.isJsonObject())
+			StdMwDownload.printLn("fetchMetabolites - stream Metabolite");
+			int count = MWJson.streamObjects(reader, Metabolite.class, "1", metabolite ->
 			{
-				JsonObject jObj = jEle.getAsJsonObject();
-				// TODO: jObj.has("1") is a clunky way to detect if we got a single object or an array, but I haven't found an alternative
-				if (true == jObj.has("1"))
-				{
-					StdMwDownload.printLn("fetchMetabolites - iterate Metabolite");
-					for (Map.Entry<String, JsonElement> entry : jObj.entrySet())
-					{
-						JsonObject sumObj = entry.getValue().getAsJsonObject();
-						Metabolite metabolite = gson.fromJson(sumObj, Metabolite.class);
-						metabolite.init();
-						mDataToSet.put(metabolite.analysis_id, metabolite);
-					}
-				}
-				else
-				{
-					StdMwDownload.printLn("fetchMetabolites - single Metabolite");
-					JsonObject sumObj = jEle.getAsJsonObject();
-					Metabolite metabolite = gson.fromJson(sumObj, Metabolite.class);
-					metabolite.init();
-					mDataToSet.put(metabolite.analysis_id, metabolite);
-				}
-				StdMwDownload.printLn("fetchMetabolites - finished iterating");
+				metabolite.init();
+				metabolite.compact(thePool);
+				mDataToSet.put(metabolite.analysis_id, metabolite);
+			});
+			if (count<0)
+			{
+				StdMwDownload.printLn("fetchMetabolites - no metabolites");
 			}
 			else
 			{
-				StdMwDownload.printLn("fetchMetabolites - no metabolites");
+				StdMwDownload.printLn("fetchMetabolites - finished iterating");
 			}
 		}
 	}
@@ -195,14 +175,18 @@ public class MetaboliteUtil
 			String line = br.readLine();
 			ArrayList<String> headers = new ArrayList<>();
 			headers.addAll(Arrays.asList(line.split("\t", -1)));
+			// ids, summaries and names repeat across metabolites, so keep one copy of each
+			StringPool pool = new StringPool();
 			// first summary line
 			line = br.readLine();
 			while (null != line)
 			{
 				Metabolite metabolite = Metabolite.getFromRowString(headers, line);
+				metabolite.compact(pool);
 				mDataToSet.put(metabolite.analysis_id, metabolite);
 				line = br.readLine();
 			}
+			StdMwDownload.printLn("readMetabolites distinct strings = " + pool.size());
 		}
 	}
 	
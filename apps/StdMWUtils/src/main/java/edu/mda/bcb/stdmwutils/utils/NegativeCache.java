@@ -0,0 +1,141 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ids a REST lookup returned no data for, with the time they were
+ * checked, kept in a tab-delimited file between runs. Ids older than
+ * the expiry are looked up again, in case the Workbench adds data.
+ *
+ * @author Tod-Casasent
+ */
+public class NegativeCache
+{
+	private final File mFile;
+	private final long mExpireMs;
+	// id to time checked (System.currentTimeMillis)
+	private final TreeMap<String, Long> mChecked = new TreeMap<>();
+	private int mSkipped = 0;
+
+	public NegativeCache(File theFile, long theExpireMs)
+	{
+		mFile = theFile;
+		mExpireMs = theExpireMs;
+	}
+
+	/**
+	 * Read the file, dropping expired entries. A missing file is an empty cache.
+	 */
+	public void read() throws IOException
+	{
+		long oldest = System.currentTimeMillis() - mExpireMs;
+		synchronized(mChecked)
+		{
+			mChecked.clear();
+			if (mFile.exists())
+			{
+				try (BufferedReader br = Files.newBufferedReader(mFile.toPath(), StandardCharsets.UTF_8))
+				{
+					// headers
+					String line = br.readLine();
+					line = br.readLine();
+					while (null != line)
+					{
+						String [] splitted = line.split("\t", -1);
+						long checked = Long.parseLong(splitted[1]);
+						if (checked>=oldest)
+						{
+							mChecked.put(splitted[0], checked);
+						}
+						line = br.readLine();
+					}
+				}
+			}
+		}
+		StdMwDownload.printLn("NegativeCache " + mFile.getName() + " read " + size() + " unexpired ids");
+	}
+
+	/**
+	 * Write to a temporary file, then move it over the old file.
+	 */
+	public void write() throws IOException
+	{
+		mFile.getParentFile().mkdirs();
+		File tmpFile = new File(mFile.getParentFile(), mFile.getName() + ".tmp");
+		try (BufferedWriter bw = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8))
+		{
+			bw.write("id\tchecked");
+			bw.newLine();
+			synchronized(mChecked)
+			{
+				for (Map.Entry<String, Long> entry : mChecked.entrySet())
+				{
+					bw.write(entry.getKey() + "\t" + entry.getValue());
+					bw.newLine();
+				}
+			}
+		}
+		Files.move(tmpFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		StdMwDownload.printLn("NegativeCache " + mFile.getName() + " wrote " + size() + " ids, skipped " + mSkipped + " lookups");
+	}
+
+	/**
+	 * @return true if theId had no data when last checked, and the entry has not expired
+	 */
+	public boolean contains(String theId)
+	{
+		synchronized(mChecked)
+		{
+			boolean found = mChecked.containsKey(theId);
+			if (found)
+			{
+				mSkipped += 1;
+			}
+			return found;
+		}
+	}
+
+	public void add(String theId)
+	{
+		synchronized(mChecked)
+		{
+			mChecked.put(theId, System.currentTimeMillis());
+		}
+	}
+
+	public void remove(String theId)
+	{
+		synchronized(mChecked)
+		{
+			mChecked.remove(theId);
+		}
+	}
+
+	public int size()
+	{
+		synchronized(mChecked)
+		{
+			return mChecked.size();
+		}
+	}
+}
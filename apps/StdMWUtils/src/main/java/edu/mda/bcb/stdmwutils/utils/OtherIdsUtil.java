@@ -12,14 +12,10 @@
  */
 package edu.mda.bcb.stdmwutils.utils;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import edu.mda.bcb.stdmwutils.DataToSet;
 import edu.mda.bcb.stdmwutils.StdMwDownload;
 import edu.mda.bcb.stdmwutils.StdMwException;
+import edu.mda.bcb.stdmwutils.StringPool;
 import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
 import edu.mda.bcb.stdmwutils.mwdata.OtherId;
 import java.io.BufferedReader;
@@ -30,7 +26,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.OpenOption;
@@ -38,7 +33,6 @@ import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
 import java.util.TreeSet;
 
 /**
@@ -47,6 +41,10 @@ import java.util.TreeSet;
  */
 public class OtherIdsUtil
 {
+	// PubChem ids with no cross-references are not looked up again until this has passed
+	static public long M_NEGATIVE_EXPIRE_MS = 30L * 24L * 60L * 60L * 1000L;
+	// ids per chunk; each chunk is fetched in parallel and the negative cache saved after it
+	static public int M_CHUNK_SIZE = 500;
 
 	static public OtherIdsUtil updateOtherIdsUtil(String theTimeStamp, RefMetUtil theRMU, MetaboliteUtil theMU, boolean theWrite) throws IOException, MalformedURLException, NoSuchAlgorithmException, StdMwException
 	{
@@ -64,10 +62,7 @@ public class OtherIdsUtil
 		}
 		else
 		{
-			for (String pcid : list)
-			{
-				ou.fetchOtherIDs(pcid);
-			}
+			ou.fetchOtherIDs(list, new NegativeCache(new File(MWUrls.M_MWB_CACHE, MWUrls.M_OTHERIDS_NEGATIVE), M_NEGATIVE_EXPIRE_MS));
 		}
 		if (theWrite)
 		{
@@ -91,55 +86,93 @@ public class OtherIdsUtil
 		mDataToSet = new DataToSet<>();
 	}
 
-	private void fetchOtherIDs(String thePubChemId) throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
+	/**
+	 * Look up each of thePubChemIds not in theNegative. The MW REST API
+	 * takes one PubChem id per request, so ids are fetched concurrently in
+	 * chunks of M_CHUNK_SIZE, saving theNegative after each chunk so an
+	 * interrupted refresh keeps what it learned.
+	 */
+	private void fetchOtherIDs(TreeSet<String> thePubChemIds, NegativeCache theNegative) throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
+	{
+		theNegative.read();
+		// names and ids repeat across PubChem ids and RefMet/Metabolite records, so keep one copy of each
+		StringPool pool = new StringPool();
+		ArrayList<String> chunk = new ArrayList<>();
+		for (String pcid : thePubChemIds)
+		{
+			if (!theNegative.contains(pcid))
+			{
+				chunk.add(pcid);
+			}
+			if (chunk.size()>=M_CHUNK_SIZE)
+			{
+				fetchChunk(chunk, theNegative, pool);
+				chunk = new ArrayList<>();
+			}
+		}
+		if (chunk.size()>0)
+		{
+			fetchChunk(chunk, theNegative, pool);
+		}
+	}
+
+	private void fetchChunk(ArrayList<String> theChunk, NegativeCache theNegative, StringPool thePool) throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
+	{
+		try
+		{
+			ParallelFetch.fetchAll("fetchOtherIDs", theChunk, pcid ->
+			{
+				if (fetchOtherIDs(pcid, thePool))
+				{
+					theNegative.remove(pcid);
+				}
+				else
+				{
+					theNegative.add(pcid);
+				}
+			});
+		}
+		finally
+		{
+			theNegative.write();
+		}
+	}
+
+	/**
+	 * @return false if there were no OtherIds for thePubChemId
+	 */
+	private boolean fetchOtherIDs(String thePubChemId, StringPool thePool) throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
 	{
 		// already filtered if (!"NA".equals(theRM.pubchem_cid))
 		String url = MWUrls.getOtherIDs(thePubChemId);
 		StdMwDownload.printLn("fetchOtherIDs - connecting to " + url);
-		try (InputStream is = new URL(url).openStream(); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
+		try (InputStream is = ResponseCache.openStream(url); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
 		{
-			GsonBuilder builder = new GsonBuilder();
-			Gson gson = builder.create();
-			//gson.DisplayRun dr = gson.fromJson(jr, DisplayRun.class);
-			StdMwDownload.printLn("fetchOtherIds - call parse reader");
-			JsonElement jEle = JsonParser.parseReader(reader);
-			if (jEle.isJsonObject())
+			StdMwDownload.printLn("fetchOtherIds - stream OtherIds");
+			int count = MWJson.streamObjects(reader, OtherId.class, "Row1", otherid ->
 			{
-				JsonObject jObj = jEle.getAsJsonObject();
-				if (true == jObj.has("Row1"))
+				// primary pubchem_cid, secondary name
+				// ignore 156700 regno until MW can fix it, as it seems to be wrong
+				// https://www.metabolomicsworkbench.org/rest/compound/pubchem_cid/119046/all
+				if (("156700".equals(otherid.regno))&&("119046".equals(otherid.pubchem_cid)))
 				{
-					StdMwDownload.printLn("fetchOtherIds - iterate OtherIds");
-					for (Map.Entry<String, JsonElement> entry : jObj.entrySet())
-					{
-						JsonObject sumObj = entry.getValue().getAsJsonObject();
-						OtherId otherid = gson.fromJson(sumObj, OtherId.class);
-						// primary pubchem_cid, secondary name
-						// ignore 156700 regno until MW can fix it, as it seems to be wrong
-						// https://www.metabolomicsworkbench.org/rest/compound/pubchem_cid/119046/all
-						if (("156700".equals(otherid.regno))&&("119046".equals(otherid.pubchem_cid)))
-						{
-							StdMwDownload.printLn("fetchOtherIds - skipping 156700 119046");
-						}
-						else
-						{
-							mDataToSet.put(otherid.pubchem_cid, otherid);
-						}
-					}
-					StdMwDownload.printLn("fetchOtherIds - finished iterating");
+					StdMwDownload.printLn("fetchOtherIds - skipping 156700 119046");
 				}
 				else
 				{
-					StdMwDownload.printLn("fetchOtherIds - single OtherId");
-					JsonObject sumObj = jEle.getAsJsonObject();
-					OtherId otherid = gson.fromJson(sumObj, OtherId.class);
-					// primary pubchem_cid, secondary name
+					otherid.compact(thePool);
 					mDataToSet.put(otherid.pubchem_cid, otherid);
 				}
+			});
+			if (count<=0)
+			{
+				StdMwDownload.printLn("fetchOtherIds - no OtherIds");
 			}
 			else
 			{
-				StdMwDownload.printLn("fetchOtherIds - no OtherIds");
+				StdMwDownload.printLn("fetchOtherIds - finished iterating");
 			}
+			return count>0;
 		}
 	}
 
@@ -191,14 +224,18 @@ public class OtherIdsUtil
 			String line = br.readLine();
 			ArrayList<String> headers = new ArrayList<>();
 			headers.addAll(Arrays.asList(line.split("\t", -1)));
+			// names and ids repeat across rows, so keep one copy of each
+			StringPool pool = new StringPool();
 			line = br.readLine();
 			while (null != line)
 			{
 				OtherId otherid = OtherId.getFromRowString(headers, line);
+				otherid.compact(pool);
 				// primary pubchem_cid, secondary name
 				mDataToSet.put(otherid.pubchem_cid, otherid);
 				line = br.readLine();
 			}
+			StdMwDownload.printLn("readOtherIds distinct strings = " + pool.size());
 		}
 	}
 
@@ -0,0 +1,115 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import edu.mda.bcb.stdmwutils.StdMwException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one fetch per item on up to M_PARALLELISM threads. Requests are
+ * paced by RequestGovernor. A parallelism of one fetches
+ * serially on the calling thread. The first error stops remaining
+ * fetches and is rethrown.
+ *
+ * @author Tod-Casasent
+ */
+public class ParallelFetch
+{
+	static public int M_PARALLELISM = 8;
+
+	@FunctionalInterface
+	public interface Fetcher<T>
+	{
+		void fetch(T theItem) throws IOException, NoSuchAlgorithmException, StdMwException;
+	}
+
+	static public <T> void fetchAll(String theLabel, Collection<T> theItems, Fetcher<T> theFetcher) throws IOException, NoSuchAlgorithmException, StdMwException
+	{
+		StdMwDownload.printLn("ParallelFetch::fetchAll " + theLabel + " items=" + theItems.size() + " parallelism=" + M_PARALLELISM);
+		if (M_PARALLELISM<=1)
+		{
+			for (T item : theItems)
+			{
+				theFetcher.fetch(item);
+			}
+		}
+		else
+		{
+			ExecutorService pool = Executors.newFixedThreadPool(M_PARALLELISM);
+			try
+			{
+				ArrayList<Future<Object>> futures = new ArrayList<>();
+				for (T item : theItems)
+				{
+					futures.add(pool.submit(() ->
+					{
+						theFetcher.fetch(item);
+						return null;
+					}));
+				}
+				for (Future<Object> future : futures)
+				{
+					waitFor(future);
+				}
+			}
+			finally
+			{
+				pool.shutdownNow();
+			}
+		}
+		StdMwDownload.printLn("ParallelFetch::fetchAll " + theLabel + " finished");
+	}
+
+	static private void waitFor(Future<Object> theFuture) throws IOException, NoSuchAlgorithmException, StdMwException
+	{
+		try
+		{
+			theFuture.get();
+		}
+		catch (InterruptedException exp)
+		{
+			Thread.currentThread().interrupt();
+			InterruptedIOException ioExp = new InterruptedIOException("Interrupted waiting for fetch");
+			ioExp.initCause(exp);
+			throw ioExp;
+		}
+		catch (ExecutionException exp)
+		{
+			Throwable cause = exp.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException)cause;
+			}
+			else if (cause instanceof NoSuchAlgorithmException)
+			{
+				throw (NoSuchAlgorithmException)cause;
+			}
+			else if (cause instanceof StdMwException)
+			{
+				throw (StdMwException)cause;
+			}
+			else if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			throw new IOException("Error in fetch", cause);
+		}
+	}
+}
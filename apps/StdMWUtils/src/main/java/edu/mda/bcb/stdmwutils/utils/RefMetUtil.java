@@ -31,7 +31,7 @@ import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -90,6 +90,30 @@ public class RefMetUtil
 		return mDataMap.getAll();
 	}
 	
+	static private int getColumn(CSVParser theParser, String theHeader) throws StdMwException
+	{
+		for (Map.Entry<String, Integer> entry : theParser.getHeaderMap().entrySet())
+		{
+			if (theHeader.equals(entry.getKey().trim()))
+			{
+				return entry.getValue();
+			}
+		}
+		throw new StdMwException("RefMet CSV missing column " + theHeader);
+	}
+
+	/**
+	 * Class names and formulas repeat across most of the ~200k RefMets,
+	 * so share one copy of each.
+	 */
+	static private void intern(RefMet theRefMet)
+	{
+		theRefMet.super_class = theRefMet.super_class.intern();
+		theRefMet.main_class = theRefMet.main_class.intern();
+		theRefMet.sub_class = theRefMet.sub_class.intern();
+		theRefMet.formula = theRefMet.formula.intern();
+	}
+
 	public void fetchRefMet(File theIn) throws FileNotFoundException, IOException, StdMwException
 	{
 		StdMwDownload.printLn("fetchRefMet - iterate file");
@@ -103,22 +127,32 @@ public class RefMetUtil
 					.setHeader()
 					.build();
 			CSVParser parser = new CSVParser(reader, format);
-			List<CSVRecord> records = parser.getRecords();
+			// resolve columns once, header names may have leading spaces
+			int nameIndex = getColumn(parser, "refmet_name");
+			int superIndex = getColumn(parser, "super_class");
+			int mainIndex = getColumn(parser, "main_class");
+			int subIndex = getColumn(parser, "sub_class");
+			int formulaIndex = getColumn(parser, "formula");
+			int massIndex = getColumn(parser, "exactmass");
+			int inchiIndex = getColumn(parser, "inchi_key");
+			int pubchemIndex = getColumn(parser, "pubchem_cid");
 			int counter = 0;
 			try
 			{
-				for (CSVRecord record : records)
+				// stream records, rather than reading the whole file into a list
+				for (CSVRecord record : parser)
 				{
 					counter += 1;
 					RefMet refMet = new RefMet();
-					refMet.name = record.get(" refmet_name").trim();
-					refMet.super_class = record.get("super_class").trim();
-					refMet.main_class = record.get("main_class").trim();
-					refMet.sub_class = record.get("sub_class").trim();
-					refMet.formula = record.get("formula").trim();
-					refMet.exactmass = record.get("exactmass").trim();
-					refMet.inchi_key = record.get("inchi_key").trim();
-					refMet.pubchem_cid = record.get("pubchem_cid").trim();
+					refMet.name = record.get(nameIndex).trim();
+					refMet.super_class = record.get(superIndex).trim();
+					refMet.main_class = record.get(mainIndex).trim();
+					refMet.sub_class = record.get(subIndex).trim();
+					refMet.formula = record.get(formulaIndex).trim();
+					refMet.exactmass = record.get(massIndex).trim();
+					refMet.inchi_key = record.get(inchiIndex).trim();
+					refMet.pubchem_cid = record.get(pubchemIndex).trim();
+					intern(refMet);
 					RefMet old = mDataMap.get(refMet.name);
 					if ((null!=old)&&(refMet.exactMatch(old)))
 					{
@@ -191,6 +225,7 @@ public class RefMetUtil
 			while (null != line)
 			{
 				RefMet refmet = RefMet.getFromRowString(headers, line);
+				intern(refmet);
 				mDataMap.put(refmet.name, refmet);
 				line = br.readLine();
 			}
@@ -0,0 +1,301 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide limits on outbound requests, applied in MWHttpClient.send
+ * so DownloadUrl, DatatableUtil, FactorUtil and the cache updaters all go
+ * through it.
+ *
+ * Each host has a token bucket refilled at M_REQUESTS_PER_SECOND with
+ * room for M_BURST requests. A rate of zero or less disables the bucket.
+ * At most M_MAX_IN_FLIGHT requests may be open at once, counting until
+ * the response body is closed. Zero or less disables the in-flight limit.
+ *
+ * The Workbench answers 403/451 for redacted datasets, so a single one
+ * is not a throttle. After M_BLOCKED_THRESHOLD of them in a row from one
+ * host, requests to that host wait M_BLOCKED_BACKOFF_MS, doubling up to
+ * M_BLOCKED_BACKOFF_MAX_MS while they continue. Any other response ends
+ * the run.
+ *
+ * @author Tod-Casasent
+ */
+public class RequestGovernor
+{
+	static public double M_REQUESTS_PER_SECOND = 10.0;
+	static public int M_BURST = 10;
+	static public int M_MAX_IN_FLIGHT = 16;
+	static public int M_BLOCKED_THRESHOLD = 3;
+	static public long M_BLOCKED_BACKOFF_MS = 30000;
+	static public long M_BLOCKED_BACKOFF_MAX_MS = 600000;
+
+	static private class HostState
+	{
+		double mTokens = M_BURST;
+		long mLastRefill = System.nanoTime();
+		int mBlockedRun = 0;
+		long mBlockedUntil = 0;
+	}
+
+	static private final TreeMap<String, HostState> M_HOSTS = new TreeMap<>();
+	static private Semaphore M_IN_FLIGHT = null;
+	static private int M_IN_FLIGHT_SIZE = 0;
+
+	static private final AtomicLong M_REQUESTS = new AtomicLong(0);
+	static private final AtomicLong M_BLOCKED = new AtomicLong(0);
+	static private final AtomicLong M_BACKOFFS = new AtomicLong(0);
+	static private final AtomicLong M_RATE_WAIT_MS = new AtomicLong(0);
+	static private final AtomicLong M_IN_FLIGHT_WAIT_MS = new AtomicLong(0);
+	static private final AtomicLong M_OPEN = new AtomicLong(0);
+	static private final AtomicLong M_MAX_OPEN = new AtomicLong(0);
+
+	/**
+	 * Held for one request, from before it is sent until its body is closed.
+	 */
+	static public class Permit
+	{
+		private final Semaphore mSemaphore;
+		private final AtomicBoolean mReleased = new AtomicBoolean(false);
+
+		private Permit(Semaphore theSemaphore)
+		{
+			mSemaphore = theSemaphore;
+		}
+
+		public void release()
+		{
+			if (mReleased.compareAndSet(false, true))
+			{
+				M_OPEN.decrementAndGet();
+				if (null!=mSemaphore)
+				{
+					mSemaphore.release();
+				}
+			}
+		}
+
+		/**
+		 * @return theBody, releasing this permit when it is closed
+		 */
+		public InputStream wrap(InputStream theBody)
+		{
+			return new FilterInputStream(theBody)
+			{
+				@Override
+				public void close() throws IOException
+				{
+					try
+					{
+						super.close();
+					}
+					finally
+					{
+						release();
+					}
+				}
+			};
+		}
+	}
+
+	synchronized static private Semaphore getInFlight()
+	{
+		if (M_MAX_IN_FLIGHT<=0)
+		{
+			return null;
+		}
+		if ((null==M_IN_FLIGHT)||(M_IN_FLIGHT_SIZE!=M_MAX_IN_FLIGHT))
+		{
+			// limit changed (or first use); requests already open keep their old permits
+			M_IN_FLIGHT = new Semaphore(M_MAX_IN_FLIGHT, true);
+			M_IN_FLIGHT_SIZE = M_MAX_IN_FLIGHT;
+		}
+		return M_IN_FLIGHT;
+	}
+
+	/**
+	 * Wait for any blocked backoff and a token for theHost, then for an
+	 * in-flight slot. Waiting on one host does not hold a slot that
+	 * requests to other hosts could use.
+	 *
+	 * @param theHost host being requested
+	 * @return permit, caller must release it or wrap the response body
+	 * @throws InterruptedIOException if interrupted while waiting
+	 */
+	static public Permit acquire(String theHost) throws InterruptedIOException
+	{
+		try
+		{
+			long waitNs = reserve(theHost);
+			if (waitNs>0)
+			{
+				M_RATE_WAIT_MS.addAndGet(waitNs / 1000000L);
+				Thread.sleep(waitNs / 1000000L, (int)(waitNs % 1000000L));
+			}
+		}
+		catch (InterruptedException exp)
+		{
+			throw interrupted(theHost, exp);
+		}
+		Semaphore semaphore = getInFlight();
+		if (null!=semaphore)
+		{
+			long start = System.currentTimeMillis();
+			try
+			{
+				semaphore.acquire();
+			}
+			catch (InterruptedException exp)
+			{
+				throw interrupted(theHost, exp);
+			}
+			M_IN_FLIGHT_WAIT_MS.addAndGet(System.currentTimeMillis() - start);
+		}
+		Permit permit = new Permit(semaphore);
+		long open = M_OPEN.incrementAndGet();
+		M_MAX_OPEN.accumulateAndGet(open, Math::max);
+		M_REQUESTS.incrementAndGet();
+		return permit;
+	}
+
+	/**
+	 * Take a token for theHost, going into debt if none are left, so
+	 * concurrent callers queue in order.
+	 *
+	 * @return nanoseconds to wait before sending
+	 */
+	static private long reserve(String theHost)
+	{
+		long now = System.nanoTime();
+		long waitNs = 0;
+		synchronized(M_HOSTS)
+		{
+			HostState state = M_HOSTS.computeIfAbsent(theHost, key -> new HostState());
+			if (state.mBlockedUntil>now)
+			{
+				waitNs = state.mBlockedUntil - now;
+			}
+			if (M_REQUESTS_PER_SECOND>0.0)
+			{
+				double refilled = state.mTokens + ((now - state.mLastRefill) / 1000000000.0) * M_REQUESTS_PER_SECOND;
+				state.mTokens = Math.min(refilled, Math.max(1, M_BURST));
+				state.mLastRefill = now;
+				state.mTokens -= 1.0;
+				if (state.mTokens<0.0)
+				{
+					waitNs = Math.max(waitNs, (long)((-state.mTokens / M_REQUESTS_PER_SECOND) * 1000000000.0));
+				}
+			}
+		}
+		return waitNs;
+	}
+
+	/**
+	 * Record the status of a response from theHost, backing off after a
+	 * run of 403/451 responses.
+	 */
+	static public void recordResponse(String theHost, int theStatus)
+	{
+		if ((403==theStatus)||(451==theStatus))
+		{
+			M_BLOCKED.incrementAndGet();
+			long backoff = 0;
+			synchronized(M_HOSTS)
+			{
+				HostState state = M_HOSTS.computeIfAbsent(theHost, key -> new HostState());
+				state.mBlockedRun += 1;
+				int over = state.mBlockedRun - M_BLOCKED_THRESHOLD;
+				if (over>=0)
+				{
+					backoff = Math.min(M_BLOCKED_BACKOFF_MAX_MS, M_BLOCKED_BACKOFF_MS << Math.min(over, 20));
+					state.mBlockedUntil = System.nanoTime() + backoff * 1000000L;
+				}
+			}
+			if (backoff>0)
+			{
+				M_BACKOFFS.incrementAndGet();
+				StdMwDownload.printWarn("RequestGovernor " + theStatus + " responses from " + theHost + ", backing off " + backoff + " ms");
+			}
+		}
+		else
+		{
+			synchronized(M_HOSTS)
+			{
+				HostState state = M_HOSTS.get(theHost);
+				if (null!=state)
+				{
+					state.mBlockedRun = 0;
+				}
+			}
+		}
+	}
+
+	static private InterruptedIOException interrupted(String theHost, InterruptedException theExp)
+	{
+		Thread.currentThread().interrupt();
+		InterruptedIOException ioExp = new InterruptedIOException("Interrupted waiting to request from " + theHost);
+		ioExp.initCause(theExp);
+		return ioExp;
+	}
+
+	static public long getRequests()
+	{
+		return M_REQUESTS.get();
+	}
+
+	static public long getBlocked()
+	{
+		return M_BLOCKED.get();
+	}
+
+	static public long getBackoffs()
+	{
+		return M_BACKOFFS.get();
+	}
+
+	static public long getRateWaitMs()
+	{
+		return M_RATE_WAIT_MS.get();
+	}
+
+	static public long getInFlightWaitMs()
+	{
+		return M_IN_FLIGHT_WAIT_MS.get();
+	}
+
+	static public long getOpen()
+	{
+		return M_OPEN.get();
+	}
+
+	static public long getMaxOpen()
+	{
+		return M_MAX_OPEN.get();
+	}
+
+	static public void printStats()
+	{
+		StdMwDownload.printLn("RequestGovernor requests=" + getRequests() + " blocked(403/451)=" + getBlocked()
+				+ " backoffs=" + getBackoffs() + " rate_wait_ms=" + getRateWaitMs()
+				+ " in_flight_wait_ms=" + getInFlightWaitMs() + " max_in_flight=" + getMaxOpen()
+				+ " (limits rps=" + M_REQUESTS_PER_SECOND + " burst=" + M_BURST + " in_flight=" + M_MAX_IN_FLIGHT + ")");
+	}
+}
@@ -0,0 +1,203 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * On-disk cache of REST responses, keyed by URL, in M_MWB_HTTP_CACHE.
+ * Each entry has a body file and a meta file with the ETag,
+ * Last-Modified and SHA-256 of the body. Cached URLs are revalidated with
+ * a conditional GET, and a 304 response is served from disk.
+ *
+ * @author Tod-Casasent
+ */
+public class ResponseCache
+{
+	static public boolean M_ENABLED = true;
+
+	// 304, served from disk
+	static private final AtomicLong M_HITS = new AtomicLong(0);
+	// full response downloaded
+	static private final AtomicLong M_MISSES = new AtomicLong(0);
+	// full response downloaded, but same content as cached
+	static private final AtomicLong M_UNCHANGED = new AtomicLong(0);
+
+	static public long getHits()
+	{
+		return M_HITS.get();
+	}
+
+	static public long getMisses()
+	{
+		return M_MISSES.get();
+	}
+
+	static public long getUnchanged()
+	{
+		return M_UNCHANGED.get();
+	}
+
+	static public void printStats()
+	{
+		StdMwDownload.printLn("ResponseCache hits=" + getHits() + " misses=" + getMisses() + " unchanged=" + getUnchanged());
+	}
+
+	/**
+	 * GET theUrl through the cache. Replaces MWHttpClient.openStream for
+	 * responses that rarely change.
+	 *
+	 * @param theUrl URL to read
+	 * @return response body, caller closes
+	 * @throws IOException on connection error or non-2xx/304 status
+	 */
+	static public InputStream openStream(String theUrl) throws IOException
+	{
+		if (!M_ENABLED)
+		{
+			return MWHttpClient.openStream(theUrl);
+		}
+		File cacheDir = new File(MWUrls.M_MWB_HTTP_CACHE);
+		cacheDir.mkdirs();
+		String key = sha256(theUrl.getBytes(StandardCharsets.UTF_8));
+		File bodyFile = new File(cacheDir, key + ".body");
+		File metaFile = new File(cacheDir, key + ".meta");
+		Properties meta = readMeta(metaFile, bodyFile);
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(theUrl))
+				.timeout(Duration.ofMillis(MWHttpClient.M_REQUEST_TIMEOUT_MS))
+				.GET();
+		if (null!=meta)
+		{
+			String etag = meta.getProperty("etag");
+			if (null!=etag)
+			{
+				builder.header("If-None-Match", etag);
+			}
+			String lastModified = meta.getProperty("last_modified");
+			if (null!=lastModified)
+			{
+				builder.header("If-Modified-Since", lastModified);
+			}
+		}
+		HttpResponse<InputStream> response = MWHttpClient.send(builder.build(), true);
+		if ((304==response.statusCode())&&(null!=meta))
+		{
+			response.body().close();
+			M_HITS.incrementAndGet();
+			return Files.newInputStream(bodyFile.toPath());
+		}
+		M_MISSES.incrementAndGet();
+		File tmpFile = File.createTempFile(key, ".tmp", cacheDir);
+		try
+		{
+			MessageDigest digest = getDigest();
+			try (InputStream is = MWHttpClient.checkedBody(response);
+					OutputStream os = Files.newOutputStream(tmpFile.toPath()))
+			{
+				byte [] buffer = new byte[64*1024];
+				for (int bytesRead; (bytesRead = is.read(buffer)) >= 0;)
+				{
+					digest.update(buffer, 0, bytesRead);
+					os.write(buffer, 0, bytesRead);
+				}
+			}
+			String hash = Hex.encodeHexString(digest.digest());
+			if ((null!=meta)&&(hash.equals(meta.getProperty("sha256"))))
+			{
+				M_UNCHANGED.incrementAndGet();
+			}
+			Properties newMeta = new Properties();
+			newMeta.setProperty("url", theUrl);
+			newMeta.setProperty("sha256", hash);
+			response.headers().firstValue("ETag").ifPresent(value -> newMeta.setProperty("etag", value));
+			response.headers().firstValue("Last-Modified").ifPresent(value -> newMeta.setProperty("last_modified", value));
+			// body first, so meta never describes a body not yet written
+			move(tmpFile, bodyFile);
+			File tmpMeta = File.createTempFile(key, ".tmp", cacheDir);
+			try (Writer writer = Files.newBufferedWriter(tmpMeta.toPath(), StandardCharsets.UTF_8))
+			{
+				newMeta.store(writer, null);
+			}
+			move(tmpMeta, metaFile);
+		}
+		finally
+		{
+			if (tmpFile.exists())
+			{
+				tmpFile.delete();
+			}
+		}
+		return Files.newInputStream(bodyFile.toPath());
+	}
+
+	static private Properties readMeta(File theMetaFile, File theBodyFile) throws IOException
+	{
+		Properties meta = null;
+		if ((theMetaFile.exists())&&(theBodyFile.exists()))
+		{
+			meta = new Properties();
+			try (Reader reader = Files.newBufferedReader(theMetaFile.toPath(), StandardCharsets.UTF_8))
+			{
+				meta.load(reader);
+			}
+		}
+		return meta;
+	}
+
+	static private void move(File theSource, File theDest) throws IOException
+	{
+		try
+		{
+			Files.move(theSource.toPath(), theDest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException exp)
+		{
+			Files.move(theSource.toPath(), theDest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	static private MessageDigest getDigest() throws IOException
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException exp)
+		{
+			throw new IOException("SHA-256 not available", exp);
+		}
+	}
+
+	static private String sha256(byte [] theBytes) throws IOException
+	{
+		return Hex.encodeHexString(getDigest().digest(theBytes));
+	}
+}
@@ -0,0 +1,656 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils.utils;
+
+import edu.mda.bcb.stdmwutils.StdMwDownload;
+import edu.mda.bcb.stdmwutils.StdMwException;
+import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Transposes a MW datatable (one record per sample, one column per
+ * feature) into one row per feature, one column per sample, without
+ * holding the whole table as Strings.
+ *
+ * Each record is read once, and each value is encoded as UTF-8 into a
+ * growing byte buffer for its feature. Above M_SPILL_BYTES, the buffers
+ * are written to a tile file in M_MWB_TEMP and reused. Output reads the
+ * tiles back in order, one feature at a time, through one buffered
+ * stream.
+ *
+ * In numeric mode, values are parsed into a double[] per feature
+ * instead, with NaN for missing (M_MISSING) or unparsable values, and
+ * written with formatDouble, NaN as NA. Per-feature missing count, min
+ * and max are kept as values are added. Tiles hold formatted values, so
+ * spilling works the same in both modes.
+ *
+ * In sample rows mode, the table is not transposed: each sample becomes
+ * a line (label, then values in feature order) under a header of feature
+ * names, as getDatatableMSC has always written. Lines are encoded into
+ * one growing buffer, and spilled to a tile in the same way.
+ *
+ * As with the ArrayTable version this replaces, duplicate features or
+ * samples, short records, or no samples are errors, and are found before
+ * anything is written.
+ *
+ * @author Tod-Casasent
+ */
+public class StreamingTranspose implements AutoCloseable
+{
+	static public long M_SPILL_BYTES = 64L * 1024L * 1024L;
+	static public int M_BUFFER_SIZE = 256 * 1024;
+	// values treated as missing in numeric mode
+	static public HashSet<String> M_MISSING = new HashSet<>(Arrays.asList("", "NA", "NaN", "N/A", "null"));
+
+	static private final byte [] M_NA = "NA".getBytes(StandardCharsets.UTF_8);
+	static private final long [] M_POWERS = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L };
+
+	private final ArrayList<String> mFeatures;
+	// index in each record of each feature
+	private final int [] mIndexes;
+	private final int mMaxIndex;
+	private final boolean mNumeric;
+	private final boolean mSampleRows;
+	// sample rows mode, encoded lines for samples not yet spilled
+	private byte [] mRows = null;
+	private int mRowsLength = 0;
+	// tab-prefixed UTF-8 values for each feature, for samples not yet spilled
+	private byte [][] mCells = null;
+	private int [] mCellLengths = null;
+	// numeric mode, values for each feature, for samples not yet spilled
+	private double [][] mValues = null;
+	private int mValueCount = 0;
+	private int [] mMissing = null;
+	private double [] mMin = null;
+	private double [] mMax = null;
+	private long mNonNumeric = 0;
+	private long mBuffered = 0;
+	private final ArrayList<String> mSamples = new ArrayList<>();
+	private final HashSet<String> mSampleSet = new HashSet<>();
+	private final ArrayList<File> mTiles = new ArrayList<>();
+
+	/**
+	 * @param theHeaders header names from the datatable, in order
+	 * @param theFeatures headers to transpose, which become output rows
+	 * @throws StdMwException for a duplicate or missing feature
+	 */
+	public StreamingTranspose(List<String> theHeaders, List<String> theFeatures) throws StdMwException
+	{
+		this(theHeaders, theFeatures, false);
+	}
+
+	/**
+	 * @param theHeaders header names from the datatable, in order
+	 * @param theFeatures headers to transpose, which become output rows
+	 * @param theNumericFlag true to parse values as doubles
+	 * @throws StdMwException for a duplicate or missing feature
+	 */
+	public StreamingTranspose(List<String> theHeaders, List<String> theFeatures, boolean theNumericFlag) throws StdMwException
+	{
+		this(theHeaders, theFeatures, theNumericFlag, false);
+	}
+
+	/**
+	 * @param theHeaders header names from the datatable, in order
+	 * @param theFeatures headers to write, in order
+	 * @param theNumericFlag true to parse values as doubles
+	 * @param theSampleRowsFlag true to keep samples as rows, rather than transpose
+	 * @throws StdMwException for a duplicate or missing feature
+	 */
+	public StreamingTranspose(List<String> theHeaders, List<String> theFeatures, boolean theNumericFlag, boolean theSampleRowsFlag) throws StdMwException
+	{
+		HashMap<String, Integer> headerIndex = new HashMap<>();
+		for (int index = 0; index < theHeaders.size(); index++)
+		{
+			headerIndex.putIfAbsent(theHeaders.get(index), index);
+		}
+		mFeatures = new ArrayList<>(theFeatures);
+		mIndexes = new int[mFeatures.size()];
+		int maxIndex = -1;
+		HashSet<String> featureSet = new HashSet<>();
+		for (int index = 0; index < mFeatures.size(); index++)
+		{
+			String feature = mFeatures.get(index);
+			if (!featureSet.add(feature))
+			{
+				throw new StdMwException("Duplicate feature " + feature);
+			}
+			Integer headerPos = headerIndex.get(feature);
+			if (null==headerPos)
+			{
+				throw new StdMwException("Feature not in headers " + feature);
+			}
+			mIndexes[index] = headerPos;
+			maxIndex = Math.max(maxIndex, headerPos);
+		}
+		mMaxIndex = maxIndex;
+		mNumeric = theNumericFlag;
+		mSampleRows = theSampleRowsFlag;
+		if (mNumeric)
+		{
+			mMissing = new int[mFeatures.size()];
+			mMin = new double[mFeatures.size()];
+			mMax = new double[mFeatures.size()];
+			Arrays.fill(mMin, Double.NaN);
+			Arrays.fill(mMax, Double.NaN);
+		}
+		if (mSampleRows)
+		{
+			mRows = new byte[64 * 1024];
+		}
+		else if (mNumeric)
+		{
+			mValues = new double[mFeatures.size()][16];
+		}
+		else
+		{
+			mCells = new byte[mFeatures.size()][];
+			mCellLengths = new int[mFeatures.size()];
+			for (int index = 0; index < mCells.length; index++)
+			{
+				mCells[index] = new byte[64];
+			}
+		}
+	}
+
+	public int getFeatureCount()
+	{
+		return mFeatures.size();
+	}
+
+	public int getSampleCount()
+	{
+		return mSamples.size();
+	}
+
+	public boolean isNumeric()
+	{
+		return mNumeric;
+	}
+
+	public String getFeature(int theFeature)
+	{
+		return mFeatures.get(theFeature);
+	}
+
+	/**
+	 * @return numeric mode, number of missing or unparsable values for theFeature
+	 */
+	public int getMissing(int theFeature)
+	{
+		return mMissing[theFeature];
+	}
+
+	/**
+	 * @return numeric mode, smallest value for theFeature, NaN if all missing
+	 */
+	public double getMin(int theFeature)
+	{
+		return mMin[theFeature];
+	}
+
+	/**
+	 * @return numeric mode, largest value for theFeature, NaN if all missing
+	 */
+	public double getMax(int theFeature)
+	{
+		return mMax[theFeature];
+	}
+
+	/**
+	 * @return numeric mode, number of values that were not numbers or M_MISSING
+	 */
+	public long getNonNumeric()
+	{
+		return mNonNumeric;
+	}
+
+	/**
+	 * @return numeric mode, total missing or unparsable values
+	 */
+	public long getMissingTotal()
+	{
+		long total = 0;
+		for (int missing : mMissing)
+		{
+			total += missing;
+		}
+		return total;
+	}
+
+	/**
+	 * Add the values for one sample.
+	 *
+	 * @param theSample sample label, becomes an output column header
+	 * @param theRecord datatable record for the sample
+	 * @throws IOException if spilling to disk fails
+	 * @throws StdMwException for a duplicate sample or a short record
+	 */
+	public void addSample(String theSample, CSVRecord theRecord) throws IOException, StdMwException
+	{
+		if (!mSampleSet.add(theSample))
+		{
+			throw new StdMwException("Duplicate sample " + theSample);
+		}
+		if (theRecord.size()<=mMaxIndex)
+		{
+			throw new StdMwException("Record for sample " + theSample + " has " + theRecord.size() + " values, expected at least " + (mMaxIndex + 1));
+		}
+		mSamples.add(theSample);
+		if (mSampleRows)
+		{
+			addRow(theSample, theRecord);
+		}
+		else if (mNumeric)
+		{
+			if (mValueCount==mValues[0].length)
+			{
+				for (int index = 0; index < mValues.length; index++)
+				{
+					mValues[index] = Arrays.copyOf(mValues[index], mValueCount * 2);
+				}
+			}
+			for (int index = 0; index < mIndexes.length; index++)
+			{
+				addValue(index, theRecord.get(mIndexes[index]));
+			}
+			mValueCount += 1;
+			mBuffered += 8L * mIndexes.length;
+		}
+		else
+		{
+			for (int index = 0; index < mIndexes.length; index++)
+			{
+				append(index, theRecord.get(mIndexes[index]));
+			}
+		}
+		if (mBuffered>M_SPILL_BYTES)
+		{
+			spill();
+		}
+	}
+
+	private void addRow(String theSample, CSVRecord theRecord)
+	{
+		appendRow(theSample);
+		for (int index = 0; index < mIndexes.length; index++)
+		{
+			String text = theRecord.get(mIndexes[index]);
+			if (mNumeric)
+			{
+				// worst case formatDouble is 32 bytes, plus the tab
+				ensureRows(33);
+				mRows[mRowsLength++] = '\t';
+				mRowsLength = formatDouble(parseValue(index, text), mRows, mRowsLength);
+			}
+			else
+			{
+				ensureRows(1);
+				mRows[mRowsLength++] = '\t';
+				appendRow(text);
+			}
+		}
+		ensureRows(1);
+		mRows[mRowsLength++] = '\n';
+		mBuffered = mRowsLength;
+	}
+
+	private void ensureRows(int theNeeded)
+	{
+		if (mRowsLength + theNeeded>mRows.length)
+		{
+			mRows = Arrays.copyOf(mRows, Math.max(mRowsLength + theNeeded, mRows.length * 2));
+		}
+	}
+
+	private void appendRow(String theValue)
+	{
+		byte [] bytes = theValue.getBytes(StandardCharsets.UTF_8);
+		ensureRows(bytes.length);
+		System.arraycopy(bytes, 0, mRows, mRowsLength, bytes.length);
+		mRowsLength += bytes.length;
+	}
+
+	private void addValue(int theFeature, String theValue)
+	{
+		mValues[theFeature][mValueCount] = parseValue(theFeature, theValue);
+	}
+
+	/**
+	 * Parse theValue, NaN if missing or not a number, and update the
+	 * statistics for theFeature.
+	 */
+	private double parseValue(int theFeature, String theValue)
+	{
+		double value = Double.NaN;
+		if (!M_MISSING.contains(theValue))
+		{
+			try
+			{
+				value = Double.parseDouble(theValue);
+			}
+			catch (NumberFormatException exp)
+			{
+				mNonNumeric += 1;
+			}
+		}
+		if (Double.isNaN(value))
+		{
+			mMissing[theFeature] += 1;
+		}
+		else
+		{
+			if (Double.isNaN(mMin[theFeature])||(value<mMin[theFeature]))
+			{
+				mMin[theFeature] = value;
+			}
+			if (Double.isNaN(mMax[theFeature])||(value>mMax[theFeature]))
+			{
+				mMax[theFeature] = value;
+			}
+		}
+		return value;
+	}
+
+	private void append(int theFeature, String theValue)
+	{
+		// worst case UTF-8 is 3 bytes per char, plus the tab
+		int needed = mCellLengths[theFeature] + 1 + theValue.length() * 3;
+		byte [] cells = mCells[theFeature];
+		if (needed>cells.length)
+		{
+			cells = Arrays.copyOf(cells, Math.max(needed, cells.length * 2));
+			mCells[theFeature] = cells;
+		}
+		int pos = mCellLengths[theFeature];
+		cells[pos++] = '\t';
+		int length = theValue.length();
+		for (int charIndex = 0; charIndex < length; charIndex++)
+		{
+			char ch = theValue.charAt(charIndex);
+			if (ch<0x80)
+			{
+				cells[pos++] = (byte)ch;
+			}
+			else
+			{
+				// non-ASCII, encode the rest of the value
+				byte [] rest = theValue.substring(charIndex).getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(rest, 0, cells, pos, rest.length);
+				pos += rest.length;
+				break;
+			}
+		}
+		mBuffered += pos - mCellLengths[theFeature];
+		mCellLengths[theFeature] = pos;
+	}
+
+	private void spill() throws IOException
+	{
+		File tempDir = new File(MWUrls.M_MWB_TEMP);
+		if (!tempDir.isDirectory())
+		{
+			tempDir = null;
+		}
+		File tile = File.createTempFile("transpose", ".tile", tempDir);
+		mTiles.add(tile);
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tile.toPath()), M_BUFFER_SIZE)))
+		{
+			if (mSampleRows)
+			{
+				// one length-prefixed block of complete lines
+				dos.writeInt(mRowsLength);
+				dos.write(mRows, 0, mRowsLength);
+				mRowsLength = 0;
+			}
+			else if (mNumeric)
+			{
+				byte [] line = new byte[64];
+				for (int index = 0; index < mValues.length; index++)
+				{
+					if (line.length<mValueCount * 32)
+					{
+						line = new byte[mValueCount * 32];
+					}
+					int pos = 0;
+					for (int sample = 0; sample < mValueCount; sample++)
+					{
+						line[pos++] = '\t';
+						pos = formatDouble(mValues[index][sample], line, pos);
+					}
+					dos.writeInt(pos);
+					dos.write(line, 0, pos);
+				}
+				mValueCount = 0;
+			}
+			else
+			{
+				for (int index = 0; index < mCells.length; index++)
+				{
+					dos.writeInt(mCellLengths[index]);
+					dos.write(mCells[index], 0, mCellLengths[index]);
+					mCellLengths[index] = 0;
+				}
+			}
+		}
+		StdMwDownload.printLn("StreamingTranspose spilled " + mBuffered + " bytes to " + tile.getAbsolutePath());
+		mBuffered = 0;
+	}
+
+	/**
+	 * Write theValue as decimal text into theBuffer at thePos, without
+	 * allocating for integers and for values with up to 9 decimal places
+	 * that round-trip exactly. Other values use Double.toString. NaN is
+	 * written as NA.
+	 *
+	 * @param theValue value to write
+	 * @param theBuffer buffer with at least 32 bytes free at thePos
+	 * @param thePos position to write at
+	 * @return position after the value
+	 */
+	static public int formatDouble(double theValue, byte [] theBuffer, int thePos)
+	{
+		int pos = thePos;
+		if (Double.isNaN(theValue))
+		{
+			System.arraycopy(M_NA, 0, theBuffer, pos, M_NA.length);
+			return pos + M_NA.length;
+		}
+		double abs = Math.abs(theValue);
+		if (abs<1.0e15)
+		{
+			for (int decimals = 0; decimals < M_POWERS.length; decimals++)
+			{
+				double scaled = Math.rint(abs * M_POWERS[decimals]);
+				// scaled and the power are exact, so the division is the nearest double to the decimal
+				if ((scaled<9.0e15)&&(scaled / M_POWERS[decimals]==abs))
+				{
+					if (theValue<0.0)
+					{
+						theBuffer[pos++] = '-';
+					}
+					return writeDigits((long)scaled, decimals, theBuffer, pos);
+				}
+			}
+		}
+		String text = Double.toString(theValue);
+		for (int index = 0; index < text.length(); index++)
+		{
+			theBuffer[pos++] = (byte)text.charAt(index);
+		}
+		return pos;
+	}
+
+	static private int writeDigits(long theDigits, int theDecimals, byte [] theBuffer, int thePos)
+	{
+		// count digits, with at least one before the decimal point
+		int digits = 1;
+		for (long rest = theDigits / 10; rest > 0; rest /= 10)
+		{
+			digits += 1;
+		}
+		digits = Math.max(digits, theDecimals + 1);
+		int length = digits;
+		if (theDecimals>0)
+		{
+			length += 1;
+		}
+		int pos = thePos + length - 1;
+		long rest = theDigits;
+		for (int digit = 0; digit < digits; digit++)
+		{
+			if ((theDecimals>0)&&(digit==theDecimals))
+			{
+				theBuffer[pos--] = '.';
+			}
+			theBuffer[pos--] = (byte)('0' + (rest % 10));
+			rest /= 10;
+		}
+		return thePos + length;
+	}
+
+	/**
+	 * Write the transposed table: a header line of sample labels (with an
+	 * empty first cell), then one line per feature. In sample rows mode,
+	 * a header line of feature names (with an empty first cell), then one
+	 * line per sample. theOut is flushed, not closed.
+	 *
+	 * @param theOut stream to write
+	 * @throws IOException
+	 * @throws StdMwException if there are no samples
+	 */
+	public void write(OutputStream theOut) throws IOException, StdMwException
+	{
+		if (mSamples.isEmpty())
+		{
+			throw new StdMwException("No samples to transpose");
+		}
+		BufferedOutputStream out = new BufferedOutputStream(theOut, M_BUFFER_SIZE);
+		if (mSampleRows)
+		{
+			writeSampleRows(out);
+			out.flush();
+			return;
+		}
+		for (String sample : mSamples)
+		{
+			out.write('\t');
+			out.write(sample.getBytes(StandardCharsets.UTF_8));
+		}
+		out.write('\n');
+		ArrayList<DataInputStream> tiles = new ArrayList<>();
+		try
+		{
+			for (File tile : mTiles)
+			{
+				tiles.add(new DataInputStream(new BufferedInputStream(Files.newInputStream(tile.toPath()), M_BUFFER_SIZE)));
+			}
+			byte [] copyBuffer = new byte[64 * 1024];
+			for (int index = 0; index < mFeatures.size(); index++)
+			{
+				out.write(mFeatures.get(index).getBytes(StandardCharsets.UTF_8));
+				for (DataInputStream dis : tiles)
+				{
+					int remaining = dis.readInt();
+					while (remaining>0)
+					{
+						int count = dis.read(copyBuffer, 0, Math.min(remaining, copyBuffer.length));
+						if (count<0)
+						{
+							throw new IOException("Unexpected end of transpose tile");
+						}
+						out.write(copyBuffer, 0, count);
+						remaining -= count;
+					}
+				}
+				if (mNumeric)
+				{
+					double [] values = mValues[index];
+					for (int sample = 0; sample < mValueCount; sample++)
+					{
+						copyBuffer[0] = '\t';
+						out.write(copyBuffer, 0, formatDouble(values[sample], copyBuffer, 1));
+					}
+				}
+				else
+				{
+					out.write(mCells[index], 0, mCellLengths[index]);
+				}
+				out.write('\n');
+			}
+		}
+		finally
+		{
+			for (DataInputStream dis : tiles)
+			{
+				dis.close();
+			}
+		}
+		out.flush();
+	}
+
+	private void writeSampleRows(BufferedOutputStream theOut) throws IOException
+	{
+		for (String feature : mFeatures)
+		{
+			theOut.write('\t');
+			theOut.write(feature.getBytes(StandardCharsets.UTF_8));
+		}
+		theOut.write('\n');
+		byte [] copyBuffer = new byte[64 * 1024];
+		for (File tile : mTiles)
+		{
+			try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(tile.toPath()), M_BUFFER_SIZE)))
+			{
+				int remaining = dis.readInt();
+				while (remaining>0)
+				{
+					int count = dis.read(copyBuffer, 0, Math.min(remaining, copyBuffer.length));
+					if (count<0)
+					{
+						throw new IOException("Unexpected end of transpose tile");
+					}
+					theOut.write(copyBuffer, 0, count);
+					remaining -= count;
+				}
+			}
+		}
+		theOut.write(mRows, 0, mRowsLength);
+	}
+
+	/**
+	 * Delete any tile files.
+	 */
+	@Override
+	public void close()
+	{
+		for (File tile : mTiles)
+		{
+			tile.delete();
+		}
+		mTiles.clear();
+	}
+}
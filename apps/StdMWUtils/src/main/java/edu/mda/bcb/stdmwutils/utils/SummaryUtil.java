@@ -12,9 +12,6 @@ package edu.mda.bcb.stdmwutils.utils;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import edu.mda.bcb.stdmwutils.DataMap;
 import edu.mda.bcb.stdmwutils.StdMwDownload;
 import edu.mda.bcb.stdmwutils.StdMwException;
@@ -28,7 +25,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.OpenOption;
@@ -36,7 +32,6 @@ import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
 import java.util.TreeSet;
 
 /**
@@ -94,19 +89,12 @@ public class SummaryUtil
 	public void fetchSummaries() throws MalformedURLException, IOException, NoSuchAlgorithmException, StdMwException
 	{
 		mDataMap = new DataMap<>();
-		StdMwDownload.printLn("fetchSummaries - connecting to " + MWUrls.M_SUMMARY_LIST);
-		try (InputStream is = new URL(MWUrls.M_SUMMARY_LIST).openStream(); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
+		StdMwDownload.printLn("fetchSummaries - connecting to " + MWUrls.getSummaryList());
+		try (InputStream is = ResponseCache.openStream(MWUrls.getSummaryList()); Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8))
 		{
-			GsonBuilder builder = new GsonBuilder();
-			Gson gson = builder.create();
-			StdMwDownload.printLn("fetchSummaries - call parse reader");
-			JsonElement jEle = JsonParser.parseReader(reader);
-			JsonObject jObj = jEle.getAsJsonObject();
-			StdMwDownload.printLn("fetchSummaries - iterate summaries");
-			for (Map.Entry<String, JsonElement> entry : jObj.entrySet())
+			StdMwDownload.printLn("fetchSummaries - stream summaries");
+			MWJson.streamObjects(reader, Summary.class, null, summary ->
 			{
-				JsonObject sumObj = entry.getValue().getAsJsonObject();
-				Summary summary = gson.fromJson(sumObj, Summary.class);
 				summary.init();
 				if (null!=mDataMap.get(summary.hash))
 				{
@@ -116,7 +104,7 @@ public class SummaryUtil
 				{
 					mDataMap.put(summary.hash, summary);
 				}
-			}
+			});
 			StdMwDownload.printLn("fetchSummaries - finished iterating");
 		}
 	}
@@ -13,19 +13,20 @@
 package edu.mda.bcb.stdmwutils.validate;
 
 import edu.mda.bcb.stdmwutils.StdMwDownload;
-import edu.mda.bcb.stdmwutils.mwdata.MWUrls;
 import edu.mda.bcb.stdmwutils.mwdata.Metabolite;
 import edu.mda.bcb.stdmwutils.mwdata.RefMet;
 import edu.mda.bcb.stdmwutils.utils.MetaboliteMapUtil;
 import edu.mda.bcb.stdmwutils.utils.MetaboliteUtil;
 import edu.mda.bcb.stdmwutils.utils.OtherIdsUtil;
 import edu.mda.bcb.stdmwutils.utils.RefMetUtil;
-import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.file.OpenOption;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  *
@@ -67,6 +68,9 @@ refmet_name    pubchem_cid
  */
 public class ValidateUtil
 {
+	// map every analysis, rather than just the ids passed to validate (-Dstdmw.validate.all=true)
+	static public boolean M_ALL_ANALYSES = Boolean.parseBoolean(System.getProperty("stdmw.validate.all", "false"));
+
 	MetaboliteUtil mMU = null;
 	RefMetUtil mRU = null;
 	OtherIdsUtil mOU = null;
@@ -77,104 +81,132 @@ public class ValidateUtil
 		mRU = theRU;
 		mOU = theOU;
 	}
-	
-	// keys are checked when downloading and reading
-	public boolean validate(String theTimestamp, ArrayList<String> theAnalysisIds) throws IOException
+
+	/**
+	 * Found and not found counts for one check, updated from parallel threads.
+	 */
+	static private class Rule
 	{
-		boolean valid = true;
-		if (false==validateMetabolitesToPubChem())
+		final String mName;
+		final LongAdder mFound = new LongAdder();
+		final LongAdder mNotFound = new LongAdder();
+
+		Rule(String theName)
 		{
-			valid = false;
+			mName = theName;
 		}
-		if (false==validateMetabolitesToRefMet())
+
+		void count(boolean theFound)
 		{
-			valid = false;
+			if (theFound)
+			{
+				mFound.increment();
+			}
+			else
+			{
+				mNotFound.increment();
+			}
 		}
-		if (false==validateMetaboliteMapUtil(theTimestamp, theAnalysisIds))
+
+		void print()
 		{
-			valid = false;
+			StdMwDownload.printLn(mName + " Found=" + mFound.sum() + " and Not Found=" + mNotFound.sum());
 		}
-		return valid;
 	}
-	
-	private boolean validateMetabolitesToRefMet()
+
+	/**
+	 * Discards MetaboliteMapUtil output, counting lines.
+	 */
+	static private class LineCount extends OutputStream
 	{
-		boolean valid = true;
-		// Metabolites.tsv refmet_name is a foreign key to RefMet.tsv refmet_name.
-		// RefMet list is not complete, so this check is not valid
-		long found = 0;
-		long notfd = 0;
-		for (Metabolite mtblt : mMU.getAll())
+		long mLines = 0;
+
+		@Override
+		public void write(int theByte)
 		{
-			if (!"".equals(mtblt.refmet_name))
+			if ('\n'==theByte)
 			{
-				if (null==mRU.getRefMet(mtblt.refmet_name))
-				{
-					notfd += 1;
-				}
-				else
+				mLines += 1;
+			}
+		}
+
+		@Override
+		public void write(byte [] theBytes, int theOffset, int theLength)
+		{
+			for (int index = theOffset; index < theOffset + theLength; index++)
+			{
+				if ('\n'==theBytes[index])
 				{
-					found += 1;
+					mLines += 1;
 				}
 			}
 		}
-		StdMwDownload.printLn("Metabolites to RefMet Found=" + found + " and Not Found=" + notfd);
-		return valid;
 	}
 	
-	private boolean validateMetabolitesToPubChem()
+	// keys are checked when downloading and reading
+	public boolean validate(String theTimestamp, ArrayList<String> theAnalysisIds) throws IOException
 	{
-		boolean valid = true;
-		// Metabolites.tsv refmet_name is a foreign key to RefMet.tsv refmet_name.
-		// RefMet list is not complete, so this check is not valid
-		long found = 0;
-		long notfd = 0;
-		for (Metabolite mtblt : mMU.getAll())
+		// RefMet list is not complete, so the foreign key checks are counted but do not fail validation
+		// RefMet.tsv refmet_name and pubchem_cid are a foreign key group to OtherId.tsv name and pubchem_cid.
+		// Metabolites.tsv refmet_name and pubchem_id are also a foreign key group to OtherId.tsv name and pubchem_cid.
+		// but not all refmet_names are in the refmet file
+		Rule toRefMet = new Rule("Metabolites to RefMet");
+		Rule toPubChem = new Rule("Metabolites to PubChem");
+		Rule toOtherIds = new Rule("Metabolites to OtherIds");
+		Rule mapped = new Rule("MetaboliteMapUtil analyses");
+		Collection<String> mapIds = (M_ALL_ANALYSES||(null==theAnalysisIds)) ? mMU.getAnalysisIds() : new HashSet<>(theAnalysisIds);
+		StdMwDownload.printLn("validate metabolites and map " + mapIds.size() + " analyses");
+		MetaboliteMapUtil mmu = MetaboliteMapUtil.getInstance(mMU, mRU, mOU);
+		AtomicBoolean valid = new AtomicBoolean(true);
+		// one pass over the metabolites of each analysis, analyses in parallel
+		mMU.getAnalysisIds().parallelStream().forEach(id ->
 		{
-			if (!"".equals(mtblt.pubchem_id))
-			{
-				found += 1;
-			}
-			else
+			TreeSet<Metabolite> mblts = mMU.getMetabolitesForAnalysis(id);
+			for (Metabolite mtblt : mblts)
 			{
 				RefMet rm = mRU.getRefMet(mtblt.refmet_name);
-				if (null==rm)
+				if (!"".equals(mtblt.refmet_name))
 				{
-					notfd += 1;
+					toRefMet.count(null!=rm);
 				}
-				else if (!"".equals(rm.pubchem_cid))
+				if (!"".equals(mtblt.pubchem_id))
 				{
-					found += 1;
+					toPubChem.count(true);
 				}
 				else
 				{
-					notfd += 1;
+					toPubChem.count((null!=rm)&&(!"".equals(rm.pubchem_cid)));
+				}
+				if ((null!=rm)&&(!"".equals(rm.pubchem_cid))&&(!"NA".equals(rm.pubchem_cid)))
+				{
+					toOtherIds.count(null!=mOU.get(rm.pubchem_cid, rm.name));
 				}
 			}
-		}
-		StdMwDownload.printLn("Metabolites to PubChem Found=" + found + " and Not Found=" + notfd);
-		return valid;
-	}
-	
-	private boolean validateMetaboliteMapUtil(String theTimestamp, ArrayList<String> theAnalysisIds) throws IOException
-	{
-		boolean valid = true;
-		// RefMet.tsv refmet_name and pubchem_cid are a foreign key group to OtherId.tsv name and pubchem_cid.
-		// Metabolites.tsv refmet_name and pubchem_id are also a foreign key group to OtherId.tsv name and pubchem_cid.
-		// but not all refmet_names are in the refmet file
-		MetaboliteMapUtil mmu = new MetaboliteMapUtil(mMU, mRU, mOU);
-		File outDir = new File(MWUrls.M_MWB_CACHE, theTimestamp);
-		File output = new File(outDir, "validate_map.tsv");
-		OpenOption[] options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING };
-		try(OutputStream bw = java.nio.file.Files.newOutputStream(output.toPath(), options))
-		{
-			for (String id : theAnalysisIds)
+			if (mapIds.contains(id))
 			{
-				StdMwDownload.printLn("MetaboliteMapUtil analysis id '" + id + "'");
-				mmu.streamTsv(bw, id);
+				// header plus one line per metabolite
+				LineCount lines = new LineCount();
+				try
+				{
+					mmu.streamTsv(lines, id);
+				}
+				catch (Exception exp)
+				{
+					StdMwDownload.printErr("MetaboliteMapUtil error for analysis id '" + id + "'", exp);
+				}
+				boolean complete = (lines.mLines==(mblts.size() + 1));
+				if (!complete)
+				{
+					StdMwDownload.printWarn("MetaboliteMapUtil analysis id '" + id + "' has " + lines.mLines + " lines for " + mblts.size() + " metabolites");
+					valid.set(false);
+				}
+				mapped.count(complete);
 			}
-		}
-		output.delete();
-		return valid;
+		});
+		toRefMet.print();
+		toPubChem.print();
+		toOtherIds.print();
+		mapped.print();
+		return valid.get();
 	}
 }
@@ -0,0 +1,120 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils;
+import edu.mda.bcb.stdmwutils.mwdata.Factor;
+import java.util.HashMap;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tod-Casasent
+ */
+public class FactorTest
+{
+	// factors strings with trailing delimiters, extra colons and blank pairs
+	static final String [] M_FACTORS =
+	{
+		"",
+		" ",
+		"Classifications:AML | Cell Culture Media:AMEM + 20% FBS | LINE:Batch8 | Gender:male | Doubling time (hr):NA",
+		"Classifications:AML | ",
+		"Classifications:AML |  ",
+		"Classifications:AML | | Gender:male",
+		" | Classifications:AML",
+		" | ",
+		" |  | ",
+		"Time:12:30 | Gender:male",
+		"a:b:c | d:e",
+		":",
+		" : ",
+		"Gender: | :male",
+		"  Gender  :  male  ",
+		"Gender:male |   \t  | LINE:Batch8",
+		"   | \t | ",
+		"Gender:male|LINE:Batch8",
+		"Gender:male | Gender:female",
+		"Gender:male ||  LINE:Batch8",
+		"\tGender\t:\tmale\t | \tLINE\t:\tBatch8\t"
+	};
+
+	public FactorTest()
+	{
+
+	}
+
+	/**
+	 * Factor.init parsing before it was a single pass: split on " | ",
+	 * trim each pair, and keep pairs with exactly one ':'.
+	 */
+	static private HashMap<String, String> regexFactors(String theFactors)
+	{
+		HashMap<String, String> factorMap = new HashMap<>();
+		String [] splitted = theFactors.split(" \\| ", -1);
+		for (String pair : splitted)
+		{
+			pair = pair.trim();
+			String [] nv = pair.split("\\:", -1);
+			if (2==nv.length)
+			{
+				String name = nv[0].trim();
+				String value = nv[1].trim();
+				factorMap.put(name, value);
+			}
+		}
+		return factorMap;
+	}
+
+	static private HashMap<String, String> initFactors(String theFactors)
+	{
+		Factor factor = new Factor();
+		factor.study_id = "ST000001";
+		factor.local_sample_id = "S1";
+		factor.factors = theFactors;
+		factor.init();
+		return factor.factorMap;
+	}
+
+	@Test
+	public void testParseFactors()
+	{
+		try
+		{
+			for (String factors : M_FACTORS)
+			{
+				assertEquals("factors=[" + factors + "]", regexFactors(factors), initFactors(factors));
+			}
+			// random strings made from the characters the parser looks at
+			char [] chars = { ' ', ' ', '|', ':', '\t', 'a', 'b', 'c' };
+			Random random = new Random(42);
+			for (int test=0; test<20000; test++)
+			{
+				StringBuilder sb = new StringBuilder();
+				int length = random.nextInt(24);
+				for (int index=0; index<length; index++)
+				{
+					sb.append(chars[random.nextInt(chars.length)]);
+				}
+				String factors = sb.toString();
+				assertEquals("factors=[" + factors + "]", regexFactors(factors), initFactors(factors));
+			}
+		}
+		catch(Exception exp)
+		{
+			exp.printStackTrace(System.err);
+			System.err.flush();
+			fail(exp.getMessage());
+		}
+	}
+}
@@ -21,7 +21,10 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses(
 {
-	ApacheCsvTest.class
+	ApacheCsvTest.class,
+	FactorTest.class,
+	StreamingTransposeTest.class,
+	ZipDataTest.class
 })
 public class StdMWUtilsSuite
 {
@@ -0,0 +1,222 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils;
+
+import edu.mda.bcb.stdmwutils.utils.StreamingTranspose;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tod-Casasent
+ */
+public class StreamingTransposeTest
+{
+	static private final String M_DATATABLE = "Samples\tClass\tglucose\tlactate\t\u00b5-alanine\n"
+			+ "S1\tA\t1.5\t2\t\n"
+			+ "S2\tB\t3\tNA\t7.25\n"
+			+ "S3\tA\t4\t5\t6\n";
+
+	static private final String M_EXPECTED = "\tS1\tS2\tS3\n"
+			+ "glucose\t1.5\t3\t4\n"
+			+ "lactate\t2\tNA\t5\n"
+			+ "\u00b5-alanine\t\t7.25\t6\n";
+
+	public StreamingTransposeTest()
+	{
+		
+	}
+
+	static private final String M_EXPECTED_NUMERIC = "\tS1\tS2\tS3\n"
+			+ "glucose\t1.5\t3\t4\n"
+			+ "lactate\t2\tNA\t5\n"
+			+ "\u00b5-alanine\tNA\t7.25\t6\n";
+
+	// getDatatableMSC layout, samples (with class) as rows
+	static private final String M_EXPECTED_MSC = "\tglucose\tlactate\t\u00b5-alanine\n"
+			+ "S1-A\t1.5\t2\t\n"
+			+ "S2-B\t3\tNA\t7.25\n"
+			+ "S3-A\t4\t5\t6\n";
+
+	private String transpose(String theDatatable) throws Exception
+	{
+		return transpose(theDatatable, false);
+	}
+
+	private String transpose(String theDatatable, boolean theNumericFlag) throws Exception
+	{
+		return transpose(theDatatable, theNumericFlag, false);
+	}
+
+	private String transpose(String theDatatable, boolean theNumericFlag, boolean theSampleRowsFlag) throws Exception
+	{
+		CSVFormat format = CSVFormat.DEFAULT.builder().setDelimiter('\t').setHeader().build();
+		CSVParser parser = new CSVParser(new StringReader(theDatatable), format);
+		ArrayList<String> features = new ArrayList<>(parser.getHeaderNames());
+		features.remove("Samples");
+		features.remove("Class");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (StreamingTranspose transpose = new StreamingTranspose(parser.getHeaderNames(), features, theNumericFlag, theSampleRowsFlag))
+		{
+			for (CSVRecord csvRecord : parser)
+			{
+				if (theSampleRowsFlag)
+				{
+					transpose.addSample(csvRecord.get("Samples") + "-" + csvRecord.get("Class"), csvRecord);
+				}
+				else
+				{
+					transpose.addSample(csvRecord.get("Samples"), csvRecord);
+				}
+			}
+			transpose.write(out);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testInMemory()
+	{
+		try
+		{
+			assertEquals(M_EXPECTED, transpose(M_DATATABLE));
+		}
+		catch(Exception exp)
+		{
+			exp.printStackTrace(System.err);
+			System.err.flush();
+			fail(exp.getMessage());
+		}
+	}
+
+	@Test
+	public void testSpill()
+	{
+		long spill = StreamingTranspose.M_SPILL_BYTES;
+		try
+		{
+			// spill after every sample
+			StreamingTranspose.M_SPILL_BYTES = 1;
+			assertEquals(M_EXPECTED, transpose(M_DATATABLE));
+		}
+		catch(Exception exp)
+		{
+			exp.printStackTrace(System.err);
+			System.err.flush();
+			fail(exp.getMessage());
+		}
+		finally
+		{
+			StreamingTranspose.M_SPILL_BYTES = spill;
+		}
+	}
+
+	@Test
+	public void testNumeric()
+	{
+		long spill = StreamingTranspose.M_SPILL_BYTES;
+		try
+		{
+			assertEquals(M_EXPECTED_NUMERIC, transpose(M_DATATABLE, true));
+			StreamingTranspose.M_SPILL_BYTES = 1;
+			assertEquals(M_EXPECTED_NUMERIC, transpose(M_DATATABLE, true));
+		}
+		catch(Exception exp)
+		{
+			exp.printStackTrace(System.err);
+			System.err.flush();
+			fail(exp.getMessage());
+		}
+		finally
+		{
+			StreamingTranspose.M_SPILL_BYTES = spill;
+		}
+	}
+
+	@Test
+	public void testSampleRows()
+	{
+		long spill = StreamingTranspose.M_SPILL_BYTES;
+		try
+		{
+			assertEquals(M_EXPECTED_MSC, transpose(M_DATATABLE, false, true));
+			assertEquals(M_EXPECTED_MSC.replace("S1-A\t1.5\t2\t\n", "S1-A\t1.5\t2\tNA\n"), transpose(M_DATATABLE, true, true));
+			// spill after every sample
+			StreamingTranspose.M_SPILL_BYTES = 1;
+			assertEquals(M_EXPECTED_MSC, transpose(M_DATATABLE, false, true));
+		}
+		catch(Exception exp)
+		{
+			exp.printStackTrace(System.err);
+			System.err.flush();
+			fail(exp.getMessage());
+		}
+		finally
+		{
+			StreamingTranspose.M_SPILL_BYTES = spill;
+		}
+	}
+
+	@Test
+	public void testFormatDouble()
+	{
+		double [] values = { 0.0, 1.0, -2.5, 0.001, 123456.789, 1.0e-12, 6.02e23, 0.1 + 0.2, 1234567890123.5, Double.MAX_VALUE };
+		Random random = new Random(42);
+		byte [] buffer = new byte[32];
+		for (int index = 0; index < 10000; index++)
+		{
+			double value = values[index % values.length];
+			if (index>=values.length)
+			{
+				value = random.nextDouble() * Math.pow(10, random.nextInt(12) - 4);
+				if (index % 3 == 0)
+				{
+					value = Math.rint(value * 1000.0) / 1000.0;
+				}
+			}
+			int length = StreamingTranspose.formatDouble(value, buffer, 0);
+			assertEquals(value, Double.parseDouble(new String(buffer, 0, length, StandardCharsets.US_ASCII)), 0.0);
+		}
+		assertEquals("NA", new String(buffer, 0, StreamingTranspose.formatDouble(Double.NaN, buffer, 0), StandardCharsets.US_ASCII));
+		assertEquals("0.5", new String(buffer, 0, StreamingTranspose.formatDouble(0.5, buffer, 0), StandardCharsets.US_ASCII));
+		assertEquals("-12", new String(buffer, 0, StreamingTranspose.formatDouble(-12.0, buffer, 0), StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testDuplicateSample()
+	{
+		try
+		{
+			transpose(M_DATATABLE + "S2\tB\t1\t1\t1\n");
+			fail("Duplicate sample not detected");
+		}
+		catch(StdMwException exp)
+		{
+			// expected
+		}
+		catch(Exception exp)
+		{
+			exp.printStackTrace(System.err);
+			System.err.flush();
+			fail(exp.getMessage());
+		}
+	}
+}
@@ -0,0 +1,138 @@
+// Copyright (c) 2011-2024 University of Texas MD Anderson Cancer Center
+//
+// This program is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// MD Anderson Cancer Center Bioinformatics on GitHub <https://github.com/MD-Anderson-Bioinformatics>
+// MD Anderson Cancer Center Bioinformatics at MDA <https://www.mdanderson.org/research/departments-labs-institutes/departments-divisions/bioinformatics-and-computational-biology.html>
+
+package edu.mda.bcb.stdmwutils;
+import edu.mda.bcb.stdmwutils.std.ZipData;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tod-Casasent
+ */
+public class ZipDataTest
+{
+	public ZipDataTest()
+	{
+		
+	}
+	
+	@Test
+	public void testZipParallel()
+	{
+		File tmpDir = null;
+		try
+		{
+			tmpDir = Files.createTempDirectory("zipdatatest").toFile();
+			File analysisDir = new File(tmpDir, "AN000001");
+			File dataDir = new File(new File(analysisDir, "versions"), "DATA_2024_01_01_0000");
+			dataDir.mkdirs();
+			StringBuilder matrix = new StringBuilder();
+			for (int row=0; row<5000; row++)
+			{
+				matrix.append("feature").append(row).append("\t").append(row * 0.5).append("\t").append(row % 7).append("\n");
+			}
+			byte [] matrixBytes = matrix.toString().getBytes(StandardCharsets.UTF_8);
+			byte [] indexBytes = "{\"id\":\"AN000001\"}".getBytes(StandardCharsets.UTF_8);
+			Files.write(new File(dataDir, "matrix.tsv").toPath(), matrixBytes);
+			Files.write(new File(dataDir, "empty.tsv").toPath(), new byte[0]);
+			Files.write(new File(analysisDir, "index.json").toPath(), indexBytes);
+			File zipFile = new File(analysisDir, "MWB_ST000001_AN000001.zip");
+			ZipData.zipParallel(dataDir, zipFile, false, true);
+			// same entry names as ZipData.zip
+			TreeSet<String> names = ZipData.getListOfFiles(zipFile);
+			System.out.println("entries = " + names);
+			assertEquals(5, names.size());
+			try (ZipFile zf = new ZipFile(zipFile))
+			{
+				ZipEntry matrixEntry = zf.getEntry("versions/DATA_2024_01_01_0000/matrix.tsv");
+				assertArrayEquals(matrixBytes, zf.getInputStream(matrixEntry).readAllBytes());
+				assertArrayEquals(indexBytes, zf.getInputStream(zf.getEntry("index.json")).readAllBytes());
+				assertEquals(0, zf.getInputStream(zf.getEntry("versions/DATA_2024_01_01_0000/empty.tsv")).readAllBytes().length);
+			}
+			// sources removed, only ZIP remains
+			assertFalse(new File(analysisDir, "versions").exists());
+			assertFalse(new File(analysisDir, "index.json").exists());
+			assertEquals(1, analysisDir.list().length);
+		}
+		catch(Exception exp)
+		{
+			exp.printStackTrace(System.err);
+			System.err.flush();
+			fail(exp.getMessage());
+		}
+		finally
+		{
+			FileUtils.deleteQuietly(tmpDir);
+		}
+	}
+
+	@Test
+	public void testZipParallelRemovePaths()
+	{
+		File tmpDir = null;
+		try
+		{
+			// MW_TMP/study/analysis, as DownloadConvertSingle lays it out
+			tmpDir = Files.createTempDirectory("zipdatatest").toFile();
+			File studyDir = new File(tmpDir, "study");
+			File analysisDir = new File(studyDir, "analysis");
+			File otherDir = new File(studyDir, "other");
+			analysisDir.mkdirs();
+			otherDir.mkdirs();
+			byte [] matrixBytes = "feature\tS1\nf1\t1.0\n".getBytes(StandardCharsets.UTF_8);
+			Files.write(new File(analysisDir, "matrix.tsv").toPath(), matrixBytes);
+			Files.write(new File(analysisDir, "batches.tsv").toPath(), "Samples\tClass\n".getBytes(StandardCharsets.UTF_8));
+			// sibling analysis, must not be added or deleted
+			Files.write(new File(otherDir, "matrix.tsv").toPath(), "other".getBytes(StandardCharsets.UTF_8));
+			File zipFile = new File(analysisDir, "MWB_ST000001_AN000001.zip");
+			ZipData.zipParallel(analysisDir, zipFile, true, true);
+			TreeSet<String> names = ZipData.getListOfFiles(zipFile);
+			System.out.println("entries = " + names);
+			assertEquals(2, names.size());
+			try (ZipFile zf = new ZipFile(zipFile))
+			{
+				assertArrayEquals(matrixBytes, zf.getInputStream(zf.getEntry("matrix.tsv")).readAllBytes());
+			}
+			// same entries as zip
+			File copyDir = new File(new File(new File(tmpDir, "copy"), "study"), "analysis");
+			copyDir.mkdirs();
+			Files.write(new File(copyDir, "matrix.tsv").toPath(), matrixBytes);
+			Files.write(new File(copyDir, "batches.tsv").toPath(), "Samples\tClass\n".getBytes(StandardCharsets.UTF_8));
+			File copyZip = new File(copyDir, "copy.zip");
+			ZipData.zip(copyDir, copyZip, true);
+			assertEquals(ZipData.getListOfFiles(copyZip), names);
+			// analysis sources removed, only ZIP remains, sibling untouched
+			assertEquals(1, analysisDir.list().length);
+			assertArrayEquals("other".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(new File(otherDir, "matrix.tsv").toPath()));
+		}
+		catch(Exception exp)
+		{
+			exp.printStackTrace(System.err);
+			System.err.flush();
+			fail(exp.getMessage());
+		}
+		finally
+		{
+			FileUtils.deleteQuietly(tmpDir);
+		}
+	}
+}